@@ -0,0 +1,67 @@
+package inkball;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ball-to-ball collision pass with growing numbers of balls.
+ *
+ * Balls are spread over a square area sized so the number of balls per cell
+ * stays the same, and each invocation moves every ball one tick before
+ * resolving collisions, so the sorted order has to be repaired as it would
+ * be in a running game.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BallCollisionBenchmark {
+    private static final float BALLS_PER_CELL = 0.25f; // Density of balls over the area
+
+    @Param({"100", "1000", "10000"})
+    public int ballCount;
+
+    private BallStore balls;
+    private BallCollider collider;
+    private float side; // Side length of the area in cells
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        side = (float) Math.sqrt(ballCount / BALLS_PER_CELL);
+        balls = new BallStore(ballCount);
+        for (int i = 0; i < ballCount; i++) {
+            int id = balls.add((char) ('0' + i % 5));
+            balls.activateNext();
+            balls.x[id] = random.nextFloat() * side;
+            balls.y[id] = random.nextFloat() * side;
+            balls.xVel[id] = random.nextBoolean() ? 2 : -2;
+            balls.yVel[id] = random.nextBoolean() ? 2 : -2;
+            balls.spawned[id] = true;
+        }
+        collider = new BallCollider();
+        collider.resolve(balls);
+    }
+
+    @Benchmark
+    public int moveAndResolve() {
+        for (int id = 0; id < ballCount; id++) {
+            float x = balls.x[id] + balls.xVel[id] / App.CELLSIZE;
+            float y = balls.y[id] + balls.yVel[id] / App.CELLSIZE;
+            if (x < 0 || x > side) {
+                balls.xVel[id] = -balls.xVel[id]; // Keep balls inside the area
+            }
+            if (y < 0 || y > side) {
+                balls.yVel[id] = -balls.yVel[id];
+            }
+            balls.x[id] = x;
+            balls.y[id] = y;
+        }
+        collider.resolve(balls);
+        return collider.pairsTested;
+    }
+}
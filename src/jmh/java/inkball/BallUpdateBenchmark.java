@@ -0,0 +1,71 @@
+package inkball;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one full update of a single ball: the move, the four wall checks,
+ * the hole check and the line check.
+ *
+ * The ball is put back at the same place before every update so each
+ * invocation does the same work. Lines are drawn elsewhere on the board, so
+ * the line check has to search the index but never removes a line.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BallUpdateBenchmark {
+    @Param({"0", "100"})
+    public int lines;
+
+    private GameEngine engine;
+    private BallStore balls;
+    private int id;
+    private float startX;
+    private float startY;
+
+    @Setup
+    public void setUp() {
+        engine = new GameEngine("config.json", 1L);
+        balls = new BallStore(1);
+        id = balls.add('2');
+        balls.spawn(id, engine.spawnLoc[0][0], engine.spawnLoc[0][1]); // Spawners are always in open space
+        startX = balls.x[id];
+        startY = balls.y[id];
+
+        Random random = new Random(1);
+        for (int i = 0; i < lines; i++) {
+            float x = random.nextFloat() * App.WIDTH;
+            float y = App.TOPBAR + random.nextFloat() * (App.HEIGHT - App.TOPBAR);
+            float ballX = startX * App.CELLSIZE;
+            float ballY = startY * App.CELLSIZE + App.TOPBAR;
+            if (Math.abs(x - ballX) < 3 * App.CELLSIZE && Math.abs(y - ballY) < 3 * App.CELLSIZE) {
+                continue; // Keep clear of the ball so it never bounces and removes a line
+            }
+            engine.startLine(x, y);
+            engine.extendLine(x + 20, y + 10);
+            engine.extendLine(x + 40, y);
+            engine.endLine();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public float update() {
+        balls.x[id] = startX;
+        balls.y[id] = startY;
+        balls.xVel[id] = 2;
+        balls.yVel[id] = 2;
+        balls.update(engine, id);
+        return balls.x[id];
+    }
+}
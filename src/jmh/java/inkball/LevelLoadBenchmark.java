@@ -0,0 +1,53 @@
+package inkball;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import processing.core.PApplet;
+import processing.data.JSONObject;
+
+/**
+ * Measures loading each shipped level.
+ *
+ * parse reads the configuration entry and the levelN.txt layout from
+ * scratch, as the first load of a level does. loadLevel builds the board,
+ * balls, collision grid and hole field from the cached binary level, as
+ * moving to the next level and resetting do.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelLoadBenchmark {
+    @Param({"1", "2", "3"})
+    public int level;
+
+    private JSONObject config;
+    private GameEngine engine;
+
+    @Setup
+    public void setUp() {
+        config = PApplet.loadJSONObject(new File("config.json"));
+        engine = new GameEngine("config.json", 1L);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public LevelData parse() {
+        return LevelData.parse(config, level);
+    }
+
+    @Benchmark
+    public BallStore loadLevel() {
+        engine.loadLevel(level);
+        return engine.balls;
+    }
+}
@@ -0,0 +1,48 @@
+package inkball;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the proximity test of a single line at different segment counts.
+ *
+ * The line zig-zags across the board and the query point is off to the side
+ * of it, so every segment is tested and none matches, the worst case for
+ * erasing or bouncing off a long line.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBenchmark {
+    @Param({"8", "64", "512", "4096"})
+    public int segments;
+
+    private Line line;
+    private float queryX;
+    private float queryY;
+
+    @Setup
+    public void setUp() {
+        line = new Line();
+        float x = 10;
+        float y = App.TOPBAR + 10;
+        for (int i = 0; i < segments; i++) {
+            float nextX = 10 + (i * 7) % (App.WIDTH - 20);
+            float nextY = App.TOPBAR + 10 + (i % 2) * 40 + (i / 80) % 12 * 40;
+            line.addSegment(x, y, nextX, nextY);
+            x = nextX;
+            y = nextY;
+        }
+        queryX = App.WIDTH + App.CELLSIZE; // Past the right edge of every segment
+        queryY = y;
+    }
+
+    @Benchmark
+    public int isNearLine() {
+        return line.isNearLine(queryX, queryY, 5);
+    }
+}
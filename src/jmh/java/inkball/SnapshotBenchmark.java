@@ -0,0 +1,104 @@
+package inkball;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving and loading a snapshot of a level in progress.
+ *
+ * The game is played for ten seconds with a line drawn every second, so the
+ * snapshot holds balls in play, balls in the queue and lines. Snapshots are
+ * written to and read from memory so only the encoding is measured.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({"1", "2", "3"})
+    public int level;
+
+    private GameEngine engine;
+    private final Snapshot snapshot = new Snapshot();
+    private final Memory memory = new Memory();
+
+    @Setup
+    public void setUp() throws IOException {
+        engine = new GameEngine("config.json", 1L);
+        engine.levelToload = level;
+        engine.reset();
+        for (int i = 0; i < engine.tickRate * 10; i++) {
+            if (i % engine.tickRate == 0) {
+                engine.startLine(100 + i % 300, 200);
+                engine.extendLine(150 + i % 300, 260);
+                engine.extendLine(200 + i % 300, 240);
+                engine.endLine();
+            }
+            engine.step();
+        }
+        save();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        memory.data.clear();
+        snapshot.save(engine, memory);
+        memory.data.flip();
+        return snapshot.bytes;
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        memory.data.rewind();
+        snapshot.load(engine, memory);
+        return engine.balls.count;
+    }
+
+    /**
+     * A channel over a buffer in memory.
+    */
+    private static class Memory implements ReadableByteChannel, WritableByteChannel {
+        private final ByteBuffer data = ByteBuffer.allocate(1 << 20);
+
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            data.put(src);
+            return count;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(dst.remaining(), data.remaining());
+            ByteBuffer slice = data.duplicate();
+            slice.limit(data.position() + count);
+            dst.put(slice);
+            data.position(data.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package inkball;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import processing.core.PImage;
+
+/**
+ * Measures choosing the sprite of every tile on a board, the lookup part of
+ * drawing the board.
+ *
+ * Sprites are blank images of the right size, since only the lookup is
+ * measured and loading real images needs a running sketch.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileSpriteBenchmark {
+    @Param({"1", "2", "3"})
+    public int level;
+
+    private SpriteTable sprites;
+    private TileMap board;
+
+    @Setup
+    public void setUp() {
+        sprites = new SpriteTable(name -> new PImage(App.CELLSIZE, App.CELLSIZE));
+        GameEngine engine = new GameEngine("config.json", 1L);
+        engine.loadLevel(level);
+        board = engine.board;
+        engine.close();
+    }
+
+    @Benchmark
+    public int resolveBoard() {
+        int found = 0;
+        for (int i = 0; i < board.height; i++) {
+            for (int j = 0; j < board.width; j++) {
+                char type = board.get(j, i);
+                if (type != Tile.HOLE_FLAG && Tile.sprite(sprites, board, j, i) != null) {
+                    found++;
+                }
+                if (Tile.spansTwoCells(type)) {
+                    j++;
+                }
+            }
+        }
+        return found;
+    }
+}
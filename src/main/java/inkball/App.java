@@ -1,17 +1,17 @@
 package inkball;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Random;
 
 import processing.core.PApplet;
 import processing.core.PImage;
-import processing.core.PVector;
-import processing.data.JSONArray;
-import processing.data.JSONObject;
 import processing.event.KeyEvent;
 import processing.event.MouseEvent;
 
@@ -25,76 +25,49 @@ import processing.event.MouseEvent;
  * 
  * Responsibilities of the App class include:
  * - Setting up the game window and rendering graphics.
- * - Managing game states (e.g., paused, running).
- * - Responding to user input for controlling the game.
- * - Updating the game state and drawing game objects each frame.
+ * - Forwarding user input to the game engine.
+ * - Stepping the game engine and drawing game objects each frame.
  * 
  * The App class extends PApplet from the Processing library, 
  * allowing for easy rendering and handling of graphics and animation.
 */
 public class App extends PApplet {
 
-    // Constants for cell size, board dimensions, top bar size, and window size
+    // Constants for cell size, visible board size, top bar size, and window size (boards themselves are sized by their layout files)
     public static final int CELLSIZE = 32;
-    public static final int BOARD_WIDTH = 18;
-    public static final int BOARD_HEIGHT = 18;
+    public static final int VIEW_WIDTH = 18; // Cells visible across the window
+    public static final int VIEW_HEIGHT = 18; // Cells visible down the window
     public static final int TOPBAR = 2 * CELLSIZE;
-    public static int WIDTH = CELLSIZE * BOARD_WIDTH; // 576
-    public static int HEIGHT = CELLSIZE * BOARD_HEIGHT + TOPBAR; // 640
+    public static int WIDTH = CELLSIZE * VIEW_WIDTH; // 576
+    public static int HEIGHT = CELLSIZE * VIEW_HEIGHT + TOPBAR; // 640
 
     // Game configuration constants
-    public static final int FPS = 30;
+    public static final int FPS = 30; // Default render frame rate
     public static String[] COLOURS = {"grey", "orange", "blue", "green", "yellow"};
     public static int TEXT_SIZE = 20;
 
-    // Game state variables related to board setup, configuration, and level handling
+    // Game state variables related to configuration
     private String configPath; // Path to configuration file
-    private JSONObject config; // JSON object to hold config data
-    private String[] levelLayout; // Array to hold the level layout
-    public int levelToload; // Current level to load
-    public int levelCount; // Total number of levels
-
-    // Game objects and mechanics
-    public Tile[][] board; // 2D array representing the game board with tiles
-    public Ball[] balls; // Array of balls used in the game
-    public int setBallCount; // Count of pre-set balls from the level file
-    public int[][] spawnLoc; // Spawner locations for new balls
-    public int extraBallCount; // Count of extra balls added during gameplay
-    public int spawnerCount; // Number of spawners in the current level
-    public int rightHoleCount; // Count of balls that have sunk into the correct hole
-    public int wrongHoleCount; // Count of balls that have sunk into the wrong hole
-
-    // Timer-related variables for handling game timing and spawning intervals
-    public int time; // Total time for the level
-    private int spawnInterval; // Time interval between ball spawns
-    public float elapsedTime; // Time elapsed during the game
-    private int frameCounter; // Frame counter for general timing
-    private float elapsedBallTime; // Time elapsed since last ball spawn
-    private int ballSpawnFrameCounter; // Frame counter for ball spawning
-    public boolean levelOver; // Indicates if the level is over
-    private int gameOverFrameCounter; // Frame counter for game-over animations
-    public boolean paused; // Game pause status
-
-    // Score-related variables
-    public int currScore; // Current score of the player
-    private int prevScore; // Previous score (carried over between levels)
-    private float scoreIncMod; // Multiplier for score increase
-    private float scoreDecMod; // Multiplier for score decrease
-    public int[] scoreInc; // Array storing score increments based on ball color
-    public int[] scoreDec; // Array storing score decrements based on ball color
-
-    // Variables for handling user-drawn lines
-    public ArrayList<Line> lines; // List of all drawn lines
-    public Line line; // Current line being drawn
-    public float prevX; // Previous X position of the mouse while drawing
-    private float prevY; // Previous Y position of the mouse while drawing
+    public Long seed; // Seed given on the command line, or null to use the configuration's
+    public String recordPath; // File to record player input to, or null to not record
+    public GameEngine engine; // Headless simulation holding all game state
+    public BoardLayer boardLayer; // Cached image of the static board
+    public HudLayer hudLayer; // Cached image of the top bar text
+    public Camera camera = new Camera(WIDTH, HEIGHT - TOPBAR); // Part of the board shown in the window
+    public FrameProfiler profiler = new FrameProfiler(); // Per-phase frame timings, shown with the P key
+    public String snapshotPath = "quicksave.snapshot"; // File the S key saves the game to and the L key loads it from
+    private Snapshot snapshot = new Snapshot(); // Reused buffer for saving and loading the game
 
     // Other general game state variables
     public HashMap<String, PImage> sprites = new HashMap<>(); // HashMap to store preloaded images for performance
-    public static Random random = new Random(); // Random object for randomness in the game
+    public SpriteTable spriteTable; // Sprites indexed by kind and colour, for lookups while drawing
+    public static Random random = new Random(); // Random object for balls created outside a game engine
     public int prevBallsToSpawn; // Previous count of balls to spawn
     private int movementFrameCounter; // Counter for ball movement frames
     private boolean ctrlPressed; // Flag to track if the control key is pressed
+    private int scrollX; // Direction the camera is scrolling across (-1, 0 or 1), from the arrow keys held
+    private int scrollY; // Direction the camera is scrolling down (-1, 0 or 1), from the arrow keys held
+    private long lastFrameNanos; // Time the previous frame started, for the fixed timestep
 
     // Constructor to initialise config file path
     public App() {
@@ -134,128 +107,26 @@ public class App extends PApplet {
      */
 	@Override
     public void setup() {
-        frameRate(FPS); // Set the frame rate
-
-        board = new Tile[BOARD_HEIGHT][BOARD_WIDTH];
-        levelLayout = new String[BOARD_HEIGHT];
-        levelToload = 1; // Level to start from
-        levelCount = 3; // Total number of levels
-
-        currScore = 0;
-        prevScore = 0;
-        scoreInc = new int[COLOURS.length];
-        scoreDec = new int[COLOURS.length];
-
-        config = loadJSONObject(configPath); // Load the configuration file
-        loadLevel(levelToload); // Load the first level
+        engine = new GameEngine(configPath, seed); // Load the configuration file and the first level
+        if (recordPath != null) {
+            engine.recorder = new ReplayLog(recordPath, engine.seed, engine.tickRate);
+        }
+        engine.events.addListener(new GameEvents.ConsoleLog()); // Capture messages are printed off the game thread
+        spriteTable = new SpriteTable(this); // Load every sprite up front
+        boardLayer = new BoardLayer(); // Drawn on the first frame of each level
+        hudLayer = new HudLayer(); // Drawn again whenever the text it shows changes
+        frameRate(engine.frameRate); // Set the render frame rate (independent of the tick rate)
+        lastFrameNanos = 0;
 
         textSize(TEXT_SIZE); // Set the text size
         fill(0); // Set the fill color to black for text
         noStroke(); // Disable outline stroke
 
-        // Initialise timers and counters
-        frameCounter = 0;
-        ballSpawnFrameCounter = 0;
-        elapsedBallTime = 0;
-        gameOverFrameCounter = 0;
-        levelOver = false;
-
-        prevBallsToSpawn = 0;
-        movementFrameCounter = 0;
-        rightHoleCount = 0;
-        wrongHoleCount = 0;
-
-        // Initialise line variables
-        lines = new ArrayList<>();
-        line = null;
+        // Initialise upcoming ball bar animation and the camera
+        resetAnimation();
         ctrlPressed = false;
-    }
-
-    /**
-     * Load the level based on the provided level number.
-     * 
-     * @param levelNum The level number to load.
-    */
-    public void loadLevel(int levelNum) {
-        extraBallCount = 0; // Reset extra ball count
-        spawnerCount = 0; // Reset spawner count
-        
-        // Load the levels array from the config JSON
-        JSONArray levels = config.getJSONArray("levels");
-        JSONObject level  = levels.getJSONObject(levelNum - 1); // Get the specific level to load
-
-        // Load the level layout from the file
-        String levelFile = level.getString("layout");    
-        levelLayout = loadStrings(levelFile); // Loads the text listed out by column
-
-        // Update tiles on the board based on the level layout
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                board[i][j] = new Tile(levelLayout[i].charAt(j), j, i); // Initialize each tile
-                if (levelLayout[i].charAt(j) == 'B') {
-                    extraBallCount++; // Count pre-set balls in the level
-                }
-                else if (levelLayout[i].charAt(j) == 'S') {
-                    spawnerCount++; // Count spawners in the level
-                }
-            }
-        }
-
-        // Create balls to be spawned in and account for tile-specified balls
-        JSONArray ballsJson = level.getJSONArray("balls");
-        setBallCount = ballsJson.size();
-        balls = new Ball[extraBallCount + setBallCount]; // Initialize ball array
-
-        // Assign colors to the balls
-        for (int i = 0; i < ballsJson.size(); i++) {
-            String ballColour = ballsJson.getString(i);
-            char ballType = '0';
-            for (int j = 0; j < COLOURS.length; j++) {
-                if (ballColour.equals(COLOURS[j])) {
-                    ballType = (char) (j + '0'); // Assign color type based on the index
-                }
-            }
-            balls[i + extraBallCount] = new Ball(ballType); // Add ball to the array
-        }
-        extraBallCount = 0; // Reset, as extra ball count will be recounted when spawning default balls
-
-        // Save locations of spawners on the board
-        spawnLoc = new int[spawnerCount][2]; // Array to hold spawner coordinates
-        int spawnersFilled = 0;
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (levelLayout[i].charAt(j) == 'S') {
-                    spawnLoc[spawnersFilled][0] = j;
-                    spawnLoc[spawnersFilled][1] = i;
-                    spawnersFilled++;
-                }
-            }
-        }
-
-        // Set the time limit for the level
-        try {
-            time = level.getInt("time");
-            if (time < 0) {
-                time = -1; // -1 is flag for infinite time
-            }
-        } catch (Exception e) {
-            time = -1;
-        }        
-        
-        spawnInterval = level.getInt("spawn_interval");
-        elapsedTime = 0;
-
-        // Set score modifiers based on level configuration
-        scoreIncMod = level.getFloat("score_increase_from_hole_capture_modifier");
-        scoreDecMod = level.getFloat("score_decrease_from_wrong_hole_modifier");
-        JSONObject scoreIncJson = config.getJSONObject("score_increase_from_hole_capture");        
-        for (int i = 0; i < scoreInc.length; i++) {
-            scoreInc[i] = (int) (scoreIncJson.getInt(COLOURS[i]) * scoreIncMod); // Set score increment values
-        }
-        JSONObject scoreDecJson = config.getJSONObject("score_increase_from_hole_capture");        
-        for (int i = 0; i < scoreDec.length; i++) {
-            scoreDec[i] = (int) (scoreDecJson.getInt(COLOURS[i]) * scoreDecMod); // Set score decrement values
-        }
+        scrollX = 0;
+        scrollY = 0;
     }
 
     /**
@@ -268,6 +139,13 @@ public class App extends PApplet {
         if (keyCode == CONTROL) {
             ctrlPressed = true;
         }
+        // Arrow keys scroll boards larger than the window
+        else if (keyCode == LEFT || keyCode == RIGHT) {
+            scrollX = (keyCode == LEFT) ? -1 : 1;
+        }
+        else if (keyCode == UP || keyCode == DOWN) {
+            scrollY = (keyCode == UP) ? -1 : 1;
+        }
     }
 
     /**
@@ -277,24 +155,38 @@ public class App extends PApplet {
     */
 	@Override
     public void keyReleased(KeyEvent event){
-        if (!levelOver) {
+        if (!engine.levelOver) {
             if (event.getKey() == 'r' || event.getKey() == 'R') {
                 reset();
             }
             else if (event.getKey() == ' ') {
-                paused = !paused;
+                engine.togglePause();
             }
         }
-        else if (levelToload == levelCount) { // allows resetting before all points added (should it be changed?)
+        else if (engine.levelToload == engine.levelCount) { // allows resetting before all points added (should it be changed?)
             if (event.getKey() == 'r' || event.getKey() == 'R') {
-                levelToload = 1;
-                prevScore = 0;
-                reset();
+                engine.restartGame();
+                resetAnimation();
             }
         }
+        if (event.getKey() == 'p' || event.getKey() == 'P') {
+            profiler.overlay = !profiler.overlay; // Toggle the profiler overlay
+        }
+        else if (event.getKey() == 's' || event.getKey() == 'S') {
+            saveSnapshot();
+        }
+        else if (event.getKey() == 'l' || event.getKey() == 'L') {
+            loadSnapshot();
+        }
         if (keyCode == CONTROL) {
             ctrlPressed = false;
         }
+        else if ((keyCode == LEFT && scrollX < 0) || (keyCode == RIGHT && scrollX > 0)) {
+            scrollX = 0;
+        }
+        else if ((keyCode == UP && scrollY < 0) || (keyCode == DOWN && scrollY > 0)) {
+            scrollY = 0;
+        }
     }
 
     /**
@@ -304,26 +196,14 @@ public class App extends PApplet {
     */
     @Override
     public void mousePressed(MouseEvent e) {
-        if (!paused && !levelOver) {
-            // Right-click to remove a line
-            if (mouseButton == RIGHT || (mouseButton == LEFT && ctrlPressed)) {
-                PVector[] mouseClose;
-                for (Line l : lines) {
-                    mouseClose = l.isNearLine(mouseX, mouseY, 5);
-                    if (mouseClose != null) {
-                        lines.remove(l);
-                        break;
-                    }
-                }
-            }
-            // Left-click to add line
-            else if (mouseButton == LEFT) {
-                prevX = mouseX;
-                prevY = mouseY;
-                line = new Line();
-                lines.add(line);
-            }
-        }        
+        // Right-click to remove a line
+        if (mouseButton == RIGHT || (mouseButton == LEFT && ctrlPressed)) {
+            engine.eraseLine(mouseX + camera.x, mouseY + camera.y);
+        }
+        // Left-click to add line
+        else if (mouseButton == LEFT) {
+            engine.startLine(mouseX + camera.x, mouseY + camera.y);
+        }
     }
     
     /**
@@ -337,12 +217,8 @@ public class App extends PApplet {
 		
 		// remove player-drawn line object if right mouse button is held 
 		// and mouse position collides with the line
-        if (!paused && !levelOver) {
-            if (mouseButton == LEFT && !ctrlPressed) {
-                line.addSegment(prevX, prevY, mouseX, mouseY);
-                prevX = mouseX;
-                prevY = mouseY; 
-            }   
+        if (mouseButton == LEFT && !ctrlPressed) {
+            engine.extendLine(mouseX + camera.x, mouseY + camera.y);
         }
     }
 
@@ -353,241 +229,257 @@ public class App extends PApplet {
     */
     @Override
     public void mouseReleased(MouseEvent e) {
-        line = null; // for checking its been set
+        engine.endLine();
     }
 
     /**
      * Handles the display of time-related messages in the game, including the countdown timer,
      * pause status, and messages for when the time is up.
      *
-     * <p>This method checks the game's current time settings and updates the displayed messages 
-     * accordingly. It considers whether the game is paused and if the time has run out. 
-     * The method also formats the positioning of the messages on the screen based on the specified 
-     * horizontal and vertical gaps.</p>
+     * <p>This method checks the game's current time settings and draws the messages straight
+     * to the screen accordingly. It considers whether the game is paused and if the time has run out.
+     * The method also formats the positioning of the messages on the screen based on the specified
+     * horizontal and vertical gaps. The draw loop shows the same text through the cached
+     * {@link HudLayer} instead.</p>
      *
      * @param time         The remaining time for the level. A value of -1 indicates infinite time.
      * @param elapsedTime  The amount of time that has passed since the start of the level.
      * @param levelOver    A boolean indicating whether the level is over.
-     * @param message      A string to hold the message to be displayed. This will be updated 
-     *                     based on the game's current time state.
      * @param textHoriGap  The horizontal gap used for positioning the text.
      * @param textVertGap  The vertical gap used for positioning the text.
     */
     public void handleTimeMessages(int time, float elapsedTime, boolean levelOver, int textHoriGap, int textVertGap) {
-        // If time is set (not infinite)
-        String message;
-        if (time != -1) {
-            // If time up
-            if (time - elapsedTime <= 0 && !levelOver) {
-                message = "=== TIME'S UP ===";
-                text(message, (int) ((WIDTH*0.5) - (textWidth(message)*0.5) + TEXT_SIZE), (int) (TOPBAR*0.5 + TEXT_SIZE*0.5));
-                paused = true;
-            }
-            // If paused
-            else if (paused) {
-                message = "*** PAUSED ***";
-                text(message, (int) ((WIDTH*0.5) - (textWidth(message)*0.5) + TEXT_SIZE), (int) (TOPBAR*0.5 + TEXT_SIZE*0.5));
-            }
-            message = "Time: ";
-            text(message, WIDTH - (textHoriGap + textWidth(message)), (int) (textVertGap*1.5) + TEXT_SIZE); // consider if text is drawn from bottom for score and time
-            text((int) (time - elapsedTime), WIDTH - textHoriGap, (int) (textVertGap*1.5) + TEXT_SIZE);
-        }
-        // If infinite time can still pause
-        else if (paused) {
-            message = "*** PAUSED ***";
-            text(message, (int) ((WIDTH*0.5) - (textWidth(message)*0.5) + TEXT_SIZE), (int) (TOPBAR*0.5 + TEXT_SIZE*0.5));
-        }
+        hudLayer.drawTime(g, time, elapsedTime, levelOver, engine.paused, textHoriGap, textVertGap);
     }
     
     /**
-     * Handles the behavior when a level is over, including score management, animation of tiles,
-     * and transitioning to the next level if applicable.
+     * Handles the display when a level is over, animating the yellow tiles at the edges
+     * of the game board. Must be called while the camera's offset is applied.
      *
-     * <p>This method updates the game's state when the current level has ended. It manages 
-     * score increments based on time elapsed, animates the yellow tiles at the edges of the 
-     * game board, and checks if the game has reached its conclusion.</p>
+     * <p>The score increments and the transition to the next level are handled by the
+     * engine; this method only draws the result. The end message shown once the game has
+     * concluded is part of the cached {@link HudLayer}.</p>
      *
      * @param levelOver A boolean indicating whether the level is over. If true, 
-     *                  the method will execute the relevant actions for the end of the level.
+     *                  the method will draw the end of level animation.
     */
     public void levelOver(boolean levelOver){
-        String message;
         if (levelOver) {
-            paused = false;
-            // Every 0.067 seconds will move yellow tiles and increase score
-            if (gameOverFrameCounter % 2 == 0 && (time != -1 && time - elapsedTime > 0)) {
-                currScore += 1;
-                frameCounter += FPS;
+            int gameOverFrameCounter = (int) (engine.gameOverFrameCounter * engine.tickScale); // in base ticks so the speed doesn't depend on the tick rate
+
+            // Move the two yellow tiles around edges (along the top and bottom, then down the sides)
+            int boardWidth = engine.board.width;
+            int boardHeight = engine.board.height;
+            int lap = gameOverFrameCounter % (boardWidth + boardHeight);
+            if (lap < boardWidth) {
+                image(spriteTable.get(SpriteTable.WALL, 4), lap * App.CELLSIZE, 0 * App.CELLSIZE + App.TOPBAR);
+                image(spriteTable.get(SpriteTable.WALL, 4), ((boardWidth - 1) - lap) * App.CELLSIZE, (boardHeight - 1) * App.CELLSIZE + App.TOPBAR);
             }
-
-            // Move the two yellow tiles around edges
-            if (gameOverFrameCounter % (18 * 2) < BOARD_WIDTH) {
-                image(getSprite("wall4"), gameOverFrameCounter%BOARD_WIDTH * App.CELLSIZE, 0 * App.CELLSIZE + App.TOPBAR);
-                image(getSprite("wall4"), ((BOARD_WIDTH - 1) - gameOverFrameCounter%BOARD_WIDTH) * App.CELLSIZE, (BOARD_HEIGHT - 1) * App.CELLSIZE + App.TOPBAR);
-            }
-            else if (gameOverFrameCounter % (18 * 2) < BOARD_WIDTH*2) {
-                image(getSprite("wall4"), (BOARD_WIDTH - 1) * App.CELLSIZE, gameOverFrameCounter%BOARD_HEIGHT * App.CELLSIZE + App.TOPBAR);
-                image(getSprite("wall4"), 0 * App.CELLSIZE, ((BOARD_HEIGHT - 1) - gameOverFrameCounter%BOARD_HEIGHT) * App.CELLSIZE + App.TOPBAR);
+            else {
+                lap -= boardWidth;
+                image(spriteTable.get(SpriteTable.WALL, 4), (boardWidth - 1) * App.CELLSIZE, lap * App.CELLSIZE + App.TOPBAR);
+                image(spriteTable.get(SpriteTable.WALL, 4), 0 * App.CELLSIZE, ((boardHeight - 1) - lap) * App.CELLSIZE + App.TOPBAR);
             }
-
-            // Increase score until time runs out
-            if (time - elapsedTime <= 0) {
-                if (levelToload == levelCount) {
-                    message = "=== ENDED ===";
-                    text(message, (int) ((WIDTH*0.5) - (textWidth(message)*0.5) + TEXT_SIZE), (int) (TOPBAR*0.5 + TEXT_SIZE*0.5));
-                }
-                else {
-                    prevScore = currScore;
-                    levelToload++;
-                    reset();
-                }
-            }
-            gameOverFrameCounter++;
         }
     }
 
     /**
      * Main draw loop that gets called repeatedly by Processing.
-     * Handles game state updates, rendering, and user interactions.
+     * Advances the engine by the real time since the last frame, then renders
+     * the game state interpolated between the last two ticks.
     */
 	@Override
     public void draw() {
-        background(200, 200, 200); // Clear background
-
-        // text placement
-        int textHoriGap = 60;
-        int textVertGap = 25;
-        String message;
-
-        // Drawing score
-        message = "Score: ";
-        text(message, WIDTH - (textHoriGap + textWidth(message)), textVertGap);
-        text(currScore, WIDTH - textHoriGap, textVertGap);
-
-        // Drawing time
-        if (!paused && !levelOver) {
-            frameCounter++;
+        JfrEvents.Frame frameEvent = new JfrEvents.Frame();
+        frameEvent.begin();
+        profiler.startFrame();
+
+        // Work out how much real time this frame covers
+        long now = System.nanoTime();
+        double frameTime = (lastFrameNanos == 0) ? 1.0 / engine.frameRate : (now - lastFrameNanos) / 1e9;
+        lastFrameNanos = now;
+
+        int levelBefore = engine.levelToload;
+        int ticks = engine.advance(frameTime); // Advance the simulation
+        if (engine.levelToload != levelBefore) {
+            resetAnimation(); // A new level was loaded
         }
-        elapsedTime = (float) frameCounter / FPS;
-        elapsedBallTime = (float) ballSpawnFrameCounter / FPS;
-
-        handleTimeMessages(time, elapsedTime, levelOver, textHoriGap, textVertGap);
-
-        // Drawing tiles
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                Tile t = board[i][j];                
-                if (t.draw(this)) {
-                    j++;
-                }
-            }
-        }        
+        float alpha = engine.interpolation();
+        camera.scroll(scrollX * Camera.SCROLL_SPEED * (float) frameTime, scrollY * Camera.SCROLL_SPEED * (float) frameTime);
+        profiler.mark(FrameProfiler.PHYSICS);
 
-        // Drawing active balls
-        int ballsToSpawn = (int) elapsedBallTime / spawnInterval + extraBallCount;
+        background(200, 200, 200); // Clear background
+        profiler.mark(FrameProfiler.CLEAR);
+
+        // Everything on the board is drawn in board positions, shifted by the camera and kept out of the top bar
+        clip(0, TOPBAR, WIDTH, HEIGHT - TOPBAR);
+        pushMatrix();
+        translate(-camera.x, -camera.y);
+
+        // Drawing tiles in view (only changed tiles are drawn again, the rest comes from the cached layer)
+        boardLayer.draw(this);
+        profiler.mark(FrameProfiler.TILES);
+
+        // Drawing active balls in view
+        BallStore balls = engine.balls;
+        int ballsToSpawn = engine.ballsToSpawn;
+        for (int i = 0; i < balls.activeCount; i++) {
+            int id = balls.active[i];
+            float ballX = balls.x[id] * CELLSIZE;
+            float ballY = balls.y[id] * CELLSIZE + TOPBAR;
+            if (camera.sees(ballX - CELLSIZE, ballY - CELLSIZE, ballX + 2 * CELLSIZE, ballY + 2 * CELLSIZE)) { // A cell of margin covers the interpolated position
+                balls.get(id).draw(this, alpha);
+            }
+        }
+        profiler.mark(FrameProfiler.BALLS);
 
-        for (int i = 0; i < ballsToSpawn - rightHoleCount - wrongHoleCount; i++) { // drawing all balls
-            Ball b = balls[i];
-            b.draw(this); 
+        // Draw the segments of lines in view
+        for (Line l : engine.lines) {
+            l.draw(this);
         }
 
+        // If level over
+        levelOver(engine.levelOver);
+        popMatrix();
+        noClip();
+        profiler.mark(FrameProfiler.LINES);
+
         // Drawing upcoming balls
         int ballGap = 6;
-        int ballDiameter = (int) balls[0].radius * 2;
+        int ballDiameter = (int) balls.radius[0] * 2;
         int rectX = 10;
         rect(rectX , CELLSIZE / 2, ballGap*6 + ballDiameter*5, ballGap*2 + ballDiameter); // x, y, w, h
         
-        // Allowing slide animation (1px/f) when a ball spawns
-        movementFrameCounter = (prevBallsToSpawn != ballsToSpawn) ? movementFrameCounter + 1 : 0; // note that smallest spawn interval is 2 seconds due to the slide
+        // Allowing slide animation (1px per base tick) when a ball spawns
+        movementFrameCounter = (prevBallsToSpawn != ballsToSpawn) ? movementFrameCounter + ticks : 0; // note that smallest spawn interval is 2 seconds due to the slide
         int movementCalc = 0;
         if (prevBallsToSpawn < ballsToSpawn) {
-            movementCalc = ballDiameter + ballGap - movementFrameCounter; // moves ball 1px/f to new pos using this offset from new pos
+            movementCalc = Math.max(0, ballDiameter + ballGap - (int) (movementFrameCounter * engine.tickScale)); // moves ball 1px per base tick to new pos using this offset from new pos
         }
         if (movementCalc == 0) {
             prevBallsToSpawn = ballsToSpawn;
         }
 
         // Draw the upcoming balls
-        int ballsToShow = 0;
-        int ballsLeft = 0;
-        for (int i = 0; i < balls.length; i++) {
-            if (!balls[i].spawned) {
-                if (ballsToShow < 5) {
-                    image(getSprite("ball" + balls[i].colour), ((ballDiameter + ballGap)*ballsToShow) + movementCalc + rectX + ballGap, (CELLSIZE / 2) + ballGap);
-                    ballsToShow++;
-                }
-                ballsLeft++;
-            }
-        }
-        // Increase time until next ball if any remain
-        if (ballsLeft > 0 && !paused){
-            ballSpawnFrameCounter++;
+        int ballsToShow = Math.min(5, balls.queueCount);
+        for (int i = 0; i < ballsToShow; i++) {
+            int id = balls.queued(i);
+            image(spriteTable.get(SpriteTable.BALL, balls.colour[id]), ((ballDiameter + ballGap)*i) + movementCalc + rectX + ballGap, (CELLSIZE / 2) + ballGap);
         }
         
         // Draw timer until next ball
         fill(200, 200, 200);
         rect(rectX + ballGap*6 + ballDiameter*5, CELLSIZE / 2, ballGap*2 + ballDiameter, ballGap*2 + ballDiameter); // covers new ball to slide in from right
         fill(0);
-        if (ballsLeft != 0) {
-            String timeToBall = String.format("%.1f", spawnInterval - (elapsedBallTime % spawnInterval));
-            text(timeToBall, rectX*2 + ballGap*6 + ballDiameter*5, (int) (TOPBAR*0.5 + TEXT_SIZE*0.5));
-        }
+        profiler.mark(FrameProfiler.UPCOMING);
 
-        // Draw lines
-        for (Line l : lines) {
-            l.draw(this);
-        }
+        // Drawing score, time, messages and the timer until the next ball (only drawn again when they change)
+        hudLayer.draw(this, rectX*2 + ballGap*6 + ballDiameter*5);
+        profiler.mark(FrameProfiler.HUD);
 
-        // Check if level is over
-        levelOver = true;
-        for (int i = 0; i < balls.length; i++) { // shows balls in queue
-            if (!balls[i].sunk) {
-                levelOver = false;
-                break;
-            }
+        profiler.endFrame(engine);
+
+        if (profiler.overlay) {
+            profiler.draw(this);
         }
 
-        // If level over
-        levelOver(levelOver);
+        frameEvent.end();
+        if (frameEvent.shouldCommit()) {
+            frameEvent.ticks = ticks;
+            frameEvent.activeBalls = balls.activeCount;
+            frameEvent.segments = engine.lineIndex.segmentCount;
+            frameEvent.commit();
+        }
     }
 
     /**
      * Reset the game state to prepare for the next level or a replay.
     */
     public void reset() {
-        // Reset timers
-        frameCounter = 0;
-        ballSpawnFrameCounter = 0;
-        elapsedBallTime = 0;
-        gameOverFrameCounter = 0;
-
-        // Reset balls
-        prevBallsToSpawn = 0;
-        movementFrameCounter = 0;
-        rightHoleCount = 0;
-        wrongHoleCount = 0;
+        engine.restartLevel();
+        resetAnimation();
+    }
 
-        // Reset game status
-        paused = false;
-        levelOver = false;
+    /**
+     * Save the game in progress to the snapshot file.
+    */
+    public void saveSnapshot() {
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotPath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            snapshot.save(engine, channel);
+        } catch (IOException e) {
+            System.out.println("Error saving snapshot");
+            e.printStackTrace();
+        }
+    }
 
-        // Reset score
-        currScore = prevScore;
+    /**
+     * Carry on from the game saved in the snapshot file.
+    */
+    public void loadSnapshot() {
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotPath), StandardOpenOption.READ)) {
+            snapshot.load(engine, channel);
+        } catch (IOException e) {
+            System.out.println("Error loading snapshot");
+            e.printStackTrace();
+        }
+        resetAnimation();
+    }
 
-        // Reset lines
-        lines = new ArrayList<Line>();
-        line = null;
+    /**
+     * Reset the upcoming ball bar animation and the camera after a level is (re)loaded.
+    */
+    private void resetAnimation() {
+        prevBallsToSpawn = 0;
+        movementFrameCounter = 0;
+        camera.setBoard(engine.board.width, engine.board.height);
+    }
 
-        // Reload the specified level layout and reset the score
-        loadLevel(levelToload);    
+    /**
+     * Close the replay file and deliver any remaining game events when the window closes.
+    */
+    @Override
+    public void dispose() {
+        if (engine != null && engine.recorder != null) {
+            engine.recorder.close(engine.tick);
+            engine.recorder = null;
+        }
+        if (engine != null) {
+            engine.close();
+        }
+        super.dispose();
     }
 
     /**
      * Entry point to the application.
+     *
+     * Options:
+     * --seed N       Seed every level from N so the run can be repeated.
+     * --record FILE  Record all player input to a replay file.
+     * --replay FILE  Play a replay file without a window, as fast as possible, and print the result.
+     * --config FILE  Use a different configuration file.
+     * --profile true Print frame and phase timings once a second (press P for the overlay).
+     *
      * @param args Arguments provided at runtime (if any).
      */
     public static void main(String[] args) {
-        PApplet.main("inkball.App");
+        App app = new App();
+        String replayPath = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--seed": app.seed = Long.parseLong(args[i + 1]); break;
+                case "--record": app.recordPath = args[i + 1]; break;
+                case "--replay": replayPath = args[i + 1]; break;
+                case "--config": app.configPath = args[i + 1]; break;
+                case "--profile": app.profiler.log = Boolean.parseBoolean(args[i + 1]); break;
+                default: System.out.println("Unknown option " + args[i]);
+            }
+        }
+        if (replayPath != null) {
+            Replay.runHeadless(app.configPath, replayPath);
+            return;
+        }
+        PApplet.runSketch(new String[] {"inkball.App"}, app);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,229 @@
+package inkball;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import processing.core.PApplet;
+import processing.data.JSONObject;
+
+/**
+ * A command line tool that plays many headless games of each level to help
+ * balance the configuration.
+ *
+ * Every game gets its own seed and draws lines with a simple policy, and the
+ * games are split across all cores with a ForkJoin pool. For each level the
+ * tool prints the distribution of the score, the share of captures that went
+ * into the right hole, and the time taken to clear the level.
+ *
+ * Usage: Balancer [--config FILE] [--games N] [--seed N] [--policy none|random]
+ *                 [--line-interval SECONDS] [--max-time SECONDS] [--threads N]
+ *
+ * Responsibilities of the Balancer class include:
+ * - Running games of each level in parallel, each with its own seed.
+ * - Drawing lines for the player with a scripted or random policy.
+ * - Summarising the results as percentiles.
+*/
+public class Balancer {
+    // Line drawing policies
+    public static final int POLICY_NONE = 0; // Never draw lines
+    public static final int POLICY_RANDOM = 1; // Draw a short random line every so often
+
+    private static final int GAMES_PER_TASK = 8; // Games run by one task before it stops splitting
+
+    public String configPath = "config.json"; // Configuration to balance
+    public int games = 1000; // Games to play per level
+    public long seed = 1; // Base seed, from which every game's seed is derived
+    public int policy = POLICY_RANDOM; // How lines are drawn
+    public float lineInterval = 2; // Seconds between lines for the random policy
+    public int maxTime = 600; // Longest a game of a level without a time limit runs (seconds)
+    public int threads = Runtime.getRuntime().availableProcessors(); // Worker threads
+
+    // Results of the level being run, one entry per game
+    private float[] scores; // Score when the level ended
+    private float[] captureRatios; // Right hole captures over all captures, NaN if nothing was captured
+    private float[] clearTimes; // Seconds until every ball was captured, NaN if the level wasn't cleared
+
+    private JSONObject config; // Loaded configuration shared by every game
+    private LevelCache levels; // Parsed levels shared by every game
+
+    /**
+     * Run every level and print the results.
+    */
+    public void run() {
+        config = PApplet.loadJSONObject(new File(configPath));
+        levels = new LevelCache(config, config.getJSONArray("levels").size());
+        scores = new float[games];
+        captureRatios = new float[games];
+        clearTimes = new float[games];
+
+        // Engines without event listeners publish nothing, so the workers stay quiet
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int level = 1; level <= config.getJSONArray("levels").size(); level++) {
+                long start = System.nanoTime();
+                pool.invoke(new Games(level, 0, games));
+                double seconds = (System.nanoTime() - start) / 1e9;
+                report(level, seconds);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Play one game of a level and store its results.
+     * @param level The level number.
+     * @param game The index of the game, which decides its seed.
+    */
+    void playGame(int level, int game) {
+        long gameSeed = GameEngine.levelSeed(seed, game + 1);
+        GameEngine engine = new GameEngine(config, levels, gameSeed);
+        if (level != 1) {
+            engine.levelToload = level;
+            engine.reset();
+        }
+        Random lines = new Random(gameSeed); // Separate from the engine's numbers so the policy doesn't change spawns
+        int lineTicks = Math.max(1, (int) (lineInterval * engine.tickRate));
+        long maxTicks = (long) maxTime * engine.tickRate;
+
+        for (long tick = 0; tick < maxTicks; tick++) {
+            if (policy == POLICY_RANDOM && tick % lineTicks == lineTicks - 1) {
+                drawRandomLine(engine, lines);
+            }
+            engine.step();
+            if (engine.levelOver || engine.levelToload != level) {
+                break; // Every ball has been captured
+            }
+            if (engine.time != -1 && engine.elapsedTime >= engine.time) {
+                break; // Out of time
+            }
+        }
+
+        int captures = engine.rightHoleCount + engine.wrongHoleCount;
+        scores[game] = engine.currScore;
+        captureRatios[game] = (captures == 0) ? Float.NaN : (float) engine.rightHoleCount / captures;
+        clearTimes[game] = engine.levelOver ? engine.elapsedTime : Float.NaN;
+        engine.close();
+    }
+
+    /**
+     * Draw a short line of three segments at a random place on the board.
+     * @param engine The engine to draw in.
+     * @param random The random numbers of the policy.
+    */
+    private static void drawRandomLine(GameEngine engine, Random random) {
+        float x = App.CELLSIZE + random.nextFloat() * ((engine.board.width - 2) * App.CELLSIZE);
+        float y = App.TOPBAR + App.CELLSIZE + random.nextFloat() * ((engine.board.height - 2) * App.CELLSIZE);
+        double angle = random.nextDouble() * Math.PI;
+        float dx = (float) Math.cos(angle) * App.CELLSIZE / 2;
+        float dy = (float) Math.sin(angle) * App.CELLSIZE / 2;
+        engine.startLine(x, y);
+        for (int i = 1; i <= 3; i++) {
+            engine.extendLine(x + dx * i, y + dy * i);
+        }
+        engine.endLine();
+    }
+
+    /**
+     * Print the results of one level.
+     * @param level The level number.
+     * @param seconds How long the games took to run.
+    */
+    private void report(int level, double seconds) {
+        System.out.printf("Level %d: %d games in %.1f s (%.0f games/min)%n", level, games, seconds, games / seconds * 60);
+        System.out.println(summary("score", scores));
+        System.out.println(summary("capture ratio", captureRatios));
+        System.out.println(summary("clear time (s)", clearTimes));
+        System.out.println();
+    }
+
+    /**
+     * Summarise a distribution as its mean and percentiles, ignoring NaN entries.
+     * @param name The name of the value.
+     * @param values The value of each game.
+     * @return A line of text with the summary.
+    */
+    static String summary(String name, float[] values) {
+        float[] sorted = new float[values.length];
+        int count = 0;
+        double total = 0;
+        for (float value : values) {
+            if (!Float.isNaN(value)) {
+                sorted[count++] = value;
+                total += value;
+            }
+        }
+        if (count == 0) {
+            return String.format("  %-15s no games", name);
+        }
+        Arrays.sort(sorted, 0, count);
+        return String.format("  %-15s n=%d mean=%.2f min=%.2f p10=%.2f p50=%.2f p90=%.2f max=%.2f",
+            name, count, total / count, sorted[0], percentile(sorted, count, 0.1), percentile(sorted, count, 0.5),
+            percentile(sorted, count, 0.9), sorted[count - 1]);
+    }
+
+    /**
+     * Get a percentile of sorted values by the nearest rank.
+     * @param sorted The values in ascending order.
+     * @param count The number of values.
+     * @param fraction The percentile as a fraction (0 to 1).
+     * @return The value at the percentile.
+    */
+    static float percentile(float[] sorted, int count, double fraction) {
+        int rank = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    /**
+     * A range of games of one level, split in half until it is small enough to run.
+    */
+    private class Games extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int level; // The level number
+        private final int from; // First game of the range
+        private final int to; // One past the last game of the range
+
+        Games(int level, int from, int to) {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                for (int game = from; game < to; game++) {
+                    playGame(level, game);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Games(level, from, middle), new Games(level, middle, to));
+        }
+    }
+
+    /**
+     * Entry point of the balancing tool.
+     * @param args Options, see the class description.
+    */
+    public static void main(String[] args) {
+        Balancer balancer = new Balancer();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--config": balancer.configPath = args[i + 1]; break;
+                case "--games": balancer.games = Integer.parseInt(args[i + 1]); break;
+                case "--seed": balancer.seed = Long.parseLong(args[i + 1]); break;
+                case "--policy": balancer.policy = args[i + 1].equals("none") ? POLICY_NONE : POLICY_RANDOM; break;
+                case "--line-interval": balancer.lineInterval = Float.parseFloat(args[i + 1]); break;
+                case "--max-time": balancer.maxTime = Integer.parseInt(args[i + 1]); break;
+                case "--threads": balancer.threads = Integer.parseInt(args[i + 1]); break;
+                default: System.out.println("Unknown option " + args[i]);
+            }
+        }
+        balancer.run();
+    }
+}
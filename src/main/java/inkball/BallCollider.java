@@ -0,0 +1,172 @@
+package inkball;
+
+import java.util.Arrays;
+
+/**
+ * Resolves elastic collisions between balls.
+ *
+ * Uses a sort-and-sweep broad phase: the active balls are kept sorted by the
+ * left edge of their x-interval, and only balls whose x-intervals overlap are
+ * tested against each other. The sorted order is kept from one tick to the
+ * next, and since balls move very little between ticks an insertion sort puts
+ * it back in order in close to linear time.
+ *
+ * Responsibilities of the BallCollider class include:
+ * - Tracking which balls are in play and keeping them sorted along x.
+ * - Finding pairs of touching balls without testing every pair.
+ * - Bouncing touching balls off each other and pushing them apart.
+*/
+public class BallCollider {
+    private int[] sorted = new int[16]; // Active ball slots, sorted by the left edge of the ball
+    private int sortedCount; // Number of slots in use in the sorted array
+    private boolean[] inSorted = new boolean[16]; // Whether a slot is currently in the sorted array
+    private boolean[] active = new boolean[16]; // Scratch flags for the balls in play this tick
+
+    public int pairsTested; // Narrow phase tests run in the last call, for benchmarks and profiling
+
+    /**
+     * Bounce every pair of touching balls among those in play.
+     * @param balls The store holding the balls.
+    */
+    public void resolve(BallStore balls) {
+        ensureCapacity(balls.count);
+        syncActive(balls);
+        sortByLeftEdge(balls);
+        sweep(balls);
+    }
+
+    /**
+     * Grow the scratch arrays to hold every slot of the store.
+     * @param capacity The number of slots in the store.
+    */
+    private void ensureCapacity(int capacity) {
+        if (capacity > inSorted.length) {
+            int newCapacity = Math.max(capacity, inSorted.length * 2);
+            sorted = Arrays.copyOf(sorted, newCapacity);
+            inSorted = Arrays.copyOf(inSorted, newCapacity);
+            active = Arrays.copyOf(active, newCapacity);
+        }
+    }
+
+    /**
+     * Drop balls that have left play from the sorted array and append balls that have entered it,
+     * keeping the order of the balls that stay.
+     * @param balls The store holding the balls.
+    */
+    private void syncActive(BallStore balls) {
+        for (int i = 0; i < balls.activeCount; i++) {
+            active[balls.active[i]] = true;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < sortedCount; i++) {
+            int id = sorted[i];
+            if (active[id]) {
+                sorted[kept++] = id;
+            }
+            else {
+                inSorted[id] = false;
+            }
+        }
+        sortedCount = kept;
+
+        for (int i = 0; i < balls.activeCount; i++) {
+            int id = balls.active[i];
+            if (!inSorted[id]) {
+                sorted[sortedCount++] = id;
+                inSorted[id] = true;
+            }
+            active[id] = false; // Clear the scratch flag for the next tick
+        }
+    }
+
+    /**
+     * Insertion sort the active balls by their left edge, which is close to linear when little has moved.
+     * @param balls The store holding the balls.
+    */
+    private void sortByLeftEdge(BallStore balls) {
+        float[] x = balls.x;
+        for (int i = 1; i < sortedCount; i++) {
+            int id = sorted[i];
+            float key = x[id];
+            int j = i - 1;
+            while (j >= 0 && x[sorted[j]] > key) {
+                sorted[j + 1] = sorted[j];
+                j--;
+            }
+            sorted[j + 1] = id;
+        }
+    }
+
+    /**
+     * Sweep along x, testing each ball only against the balls whose x-intervals overlap it.
+     * @param balls The store holding the balls.
+    */
+    private void sweep(BallStore balls) {
+        float[] x = balls.x;
+        float[] y = balls.y;
+        float[] radius = balls.radius;
+        pairsTested = 0;
+        for (int i = 0; i < sortedCount; i++) {
+            int a = sorted[i];
+            float rightEdge = x[a] + radius[a] * 2 / App.CELLSIZE;
+            for (int j = i + 1; j < sortedCount; j++) {
+                int b = sorted[j];
+                if (x[b] > rightEdge) {
+                    break; // Every later ball starts further right, so none can overlap
+                }
+                float topGap = (y[b] - y[a]) * App.CELLSIZE;
+                if (topGap > radius[a] * 2 || -topGap > radius[b] * 2) {
+                    continue; // The y-intervals don't overlap
+                }
+                pairsTested++;
+                collide(balls, a, b);
+            }
+        }
+    }
+
+    /**
+     * Bounce two balls off each other if they touch and are moving closer, and push them apart.
+     * Balls are weighted by the area of their sprite.
+     * @param balls The store holding the balls.
+     * @param a The slot of the first ball.
+     * @param b The slot of the second ball.
+    */
+    private void collide(BallStore balls, int a, int b) {
+        float ra = balls.radius[a];
+        float rb = balls.radius[b];
+
+        // Work in pixels between the ball centres
+        float dx = (balls.x[b] - balls.x[a]) * App.CELLSIZE + rb - ra;
+        float dy = (balls.y[b] - balls.y[a]) * App.CELLSIZE + rb - ra;
+        float distanceSq = dx * dx + dy * dy;
+        float minDistance = ra + rb;
+        if (distanceSq >= minDistance * minDistance || distanceSq == 0) {
+            return;
+        }
+        float distance = (float) Math.sqrt(distanceSq);
+        float normalX = dx / distance;
+        float normalY = dy / distance;
+        float massA = ra * ra;
+        float massB = rb * rb;
+
+        // Exchange momentum along the normal if the balls are approaching
+        float approach = (balls.xVel[a] - balls.xVel[b]) * normalX + (balls.yVel[a] - balls.yVel[b]) * normalY;
+        if (approach > 0) {
+            float impulse = 2 * approach / (massA + massB);
+            balls.xVel[a] -= impulse * massB * normalX;
+            balls.yVel[a] -= impulse * massB * normalY;
+            balls.xVel[b] += impulse * massA * normalX;
+            balls.yVel[b] += impulse * massA * normalY;
+        }
+
+        // Separate the balls so they don't stay stuck together
+        float overlap = (minDistance - distance) / App.CELLSIZE;
+        float shareA = massB / (massA + massB);
+        float shareB = massA / (massA + massB);
+        balls.x[a] -= normalX * overlap * shareA;
+        balls.y[a] -= normalY * overlap * shareA;
+        balls.x[b] += normalX * overlap * shareB;
+        balls.y[b] += normalY * overlap * shareB;
+    }
+}
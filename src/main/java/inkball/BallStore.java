@@ -0,0 +1,840 @@
+package inkball;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Stores the state of many balls in parallel primitive arrays.
+ *
+ * Each ball is a slot number into the arrays below rather than an object of
+ * its own, so updating thousands of balls walks a few contiguous arrays
+ * instead of chasing a pointer per ball. {@link Ball} objects are
+ * lightweight views onto a slot for code that wants to work with one ball.
+ *
+ * Walls and lines are hit with swept tests: within each step the earliest
+ * contact along the ball's path is found, the ball is moved to it and
+ * bounced, and the rest of the step continues from there, so no speed can
+ * carry a ball through a wall or a line. Holes and accelerators act over an
+ * area and are applied between steps.
+ *
+ * Every ball is in exactly one lifecycle partition: the queue of balls
+ * waiting to spawn (a ring buffer in spawn order), the set of balls in play
+ * (an array with swap-remove), or the sunk balls (only counted). Spawning,
+ * capturing and sending a ball back to the queue are all O(1).
+ *
+ * The scratch state of an update lives in a {@link Worker}, so balls can be
+ * updated on several threads at once (see {@link ParallelBalls}). A deferred
+ * worker records the lines a ball bounces off and the hole it falls into
+ * instead of removing the lines and scoring, and {@link #commit} applies the
+ * record later on the engine's thread.
+ *
+ * Responsibilities of the BallStore class include:
+ * - Holding position, velocity, size, colour and lifecycle state per ball.
+ * - Keeping the lifecycle of the balls: queued, in play or sunk.
+ * - Updating every active ball each tick, including wall, hole and line collisions.
+ * - Writing and reading every ball as part of a {@link Snapshot}.
+*/
+public class BallStore {
+    // Per-ball state, indexed by slot
+    public float[] x; // X position of the ball in cells
+    public float[] y; // Y position of the ball in cells
+    public float[] prevX; // X position at the start of the current tick (used for interpolated drawing)
+    public float[] prevY; // Y position at the start of the current tick (used for interpolated drawing)
+    public float[] xVel; // X velocity of the ball
+    public float[] yVel; // Y velocity of the ball
+    public float[] size; // The current size of the ball
+    public float[] defaultSize; // The constant size of the ball (used for resetting size)
+    public float[] radius; // Radius of the ball (based on the ball image)
+    public float[] spawnOffset; // Offset to center the ball on its spawn tile
+    public char[] colour; // The color of the ball, used to determine its sprite and behavior
+    public boolean[] spawned; // Flag to indicate if the ball has been spawned
+    public boolean[] sunk; // Flag to indicate if the ball has sunk into a hole
+
+    public int count; // Number of slots in use
+
+    // Lifecycle partitions
+    public int[] active; // Slots of the balls in play, in no particular order
+    public int activeCount; // Number of balls in play
+    private int[] activeIndex; // Position of each slot in active, for removing it in O(1)
+    private int[] queue; // Slots of the balls waiting to spawn, as a ring buffer in spawn order
+    private int queueHead; // Position of the next ball to spawn in queue
+    public int queueCount; // Number of balls waiting to spawn
+    public int sunkCount; // Number of balls sunk into the right hole, which never come back
+
+    public Random random = App.random; // Random numbers for spawn choices and directions (the engine's for its balls)
+
+    private static final float MAX_STEP_DISTANCE = 0.5f; // Furthest a ball moves between hole and accelerator checks (cells)
+    private static final int MAX_CONTACTS = 8; // Most wall and line contacts handled in one sub-step before the ball stops for the rest of it
+
+    // Wall probes: the edge midpoints of the ball's box that are tested against walls, as offsets in radii
+    private static final float[] PROBE_X = {1, 1, 0, 2}; // Top, bottom, left, right
+    private static final float[] PROBE_Y = {0, 2, 1, 1};
+    private static final int[] PROBE_DIR = {1, -1, 1, -1}; // Direction a wall sends the ball along the probe's axis
+
+    private Ball[] views; // Lazily created views onto each slot
+    private final Worker worker = new Worker(); // Scratch state for updates on the engine's thread
+
+    /**
+     * Scratch state for updating balls on one thread, and the record of what
+     * deferred updates did to the rest of the game.
+    */
+    static final class Worker {
+        float stepScale = 1; // Fraction of a base tick covered by the current sub-step
+        int rayCell; // Collision data of the wall cell found by the last ray cast
+        final LineIndex.Hit hit = new LineIndex.Hit(); // Line touched by the last sweep
+        boolean deferred; // Whether line bounces and captures are recorded rather than applied
+
+        // Line bounces recorded while deferred, in the order they happened
+        Line[] lines = new Line[16]; // Line bounced off
+        int[] segments = new int[16]; // Segment bounced off
+        int[] scanned = new int[16]; // Index entries tested to find the line
+        float[] bounceX = new float[16]; // X position of the ball at the bounce
+        float[] bounceY = new float[16]; // Y position of the ball at the bounce
+        char[] bounceColour = new char[16]; // Colour of the ball at the bounce
+        int bounceCount; // Number of bounces recorded
+        int ballFirst; // First bounce recorded for the ball being updated, whose lines it can't touch again
+
+        int captureHole = -1; // Hole the ball being updated fell into while deferred, or -1
+
+        /**
+         * Record a line bounce, growing the record if needed.
+         * @param l The line bounced off.
+         * @param seg The segment bounced off.
+         * @param tested The number of index entries tested to find the line.
+         * @param ballX The X position of the ball at the bounce.
+         * @param ballY The Y position of the ball at the bounce.
+         * @param ballColour The colour of the ball at the bounce.
+        */
+        void record(Line l, int seg, int tested, float ballX, float ballY, char ballColour) {
+            if (bounceCount == lines.length) {
+                int capacity = bounceCount * 2;
+                lines = Arrays.copyOf(lines, capacity);
+                segments = Arrays.copyOf(segments, capacity);
+                scanned = Arrays.copyOf(scanned, capacity);
+                bounceX = Arrays.copyOf(bounceX, capacity);
+                bounceY = Arrays.copyOf(bounceY, capacity);
+                bounceColour = Arrays.copyOf(bounceColour, capacity);
+            }
+            lines[bounceCount] = l;
+            segments[bounceCount] = seg;
+            scanned[bounceCount] = tested;
+            bounceX[bounceCount] = ballX;
+            bounceY[bounceCount] = ballY;
+            bounceColour[bounceCount] = ballColour;
+            bounceCount++;
+        }
+
+        /**
+         * Forget every recorded bounce, without keeping removed lines reachable.
+        */
+        void clear() {
+            Arrays.fill(lines, 0, bounceCount, null);
+            bounceCount = 0;
+            ballFirst = 0;
+            captureHole = -1;
+        }
+    }
+
+    /**
+     * Constructor for the BallStore object.
+     * @param capacity The number of balls to make room for (the store grows if more are added).
+    */
+    public BallStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        x = new float[capacity];
+        y = new float[capacity];
+        prevX = new float[capacity];
+        prevY = new float[capacity];
+        xVel = new float[capacity];
+        yVel = new float[capacity];
+        size = new float[capacity];
+        defaultSize = new float[capacity];
+        radius = new float[capacity];
+        spawnOffset = new float[capacity];
+        colour = new char[capacity];
+        spawned = new boolean[capacity];
+        sunk = new boolean[capacity];
+        active = new int[capacity];
+        activeIndex = new int[capacity];
+        queue = new int[capacity];
+        views = new Ball[capacity];
+    }
+
+    /**
+     * Add a new unspawned ball to the back of the queue.
+     * @param ballColour The color of the ball, which determines its image and behavior.
+     * @return The slot of the new ball.
+    */
+    public int add(char ballColour) {
+        if (count == x.length) {
+            grow(x.length * 2);
+        }
+        int id = count++;
+        colour[id] = ballColour;
+        spawned[id] = false;
+        sunk[id] = false;
+        int type = ballColour - '0';
+        if (type >= 0 && type < BallTypes.RADIUS.length) { // Shared per colour, so no image is decoded here
+            radius[id] = BallTypes.RADIUS[type];
+            spawnOffset[id] = BallTypes.SPAWN_OFFSET[type];
+            defaultSize[id] = BallTypes.DEFAULT_SIZE[type];
+        }
+        else {
+            radius[id] = 0; // No sprite for this colour
+            spawnOffset[id] = 0.5f;
+            defaultSize[id] = 0;
+        }
+        size[id] = defaultSize[id];
+        queue[(queueHead + queueCount) % queue.length] = id;
+        queueCount++;
+        return id;
+    }
+
+    /**
+     * Get a view of one ball.
+     * @param id The slot of the ball.
+     * @return A Ball backed by this store.
+    */
+    public Ball get(int id) {
+        if (views[id] == null) {
+            views[id] = new Ball(this, id);
+        }
+        return views[id];
+    }
+
+    /**
+     * Resize every array to a new capacity.
+     * @param capacity The new capacity.
+    */
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        prevX = Arrays.copyOf(prevX, capacity);
+        prevY = Arrays.copyOf(prevY, capacity);
+        xVel = Arrays.copyOf(xVel, capacity);
+        yVel = Arrays.copyOf(yVel, capacity);
+        size = Arrays.copyOf(size, capacity);
+        defaultSize = Arrays.copyOf(defaultSize, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        spawnOffset = Arrays.copyOf(spawnOffset, capacity);
+        colour = Arrays.copyOf(colour, capacity);
+        spawned = Arrays.copyOf(spawned, capacity);
+        sunk = Arrays.copyOf(sunk, capacity);
+        active = Arrays.copyOf(active, capacity);
+        activeIndex = Arrays.copyOf(activeIndex, capacity);
+        int[] grown = new int[capacity]; // Unwrap the ring so it starts at the front
+        for (int i = 0; i < queueCount; i++) {
+            grown[i] = queued(i);
+        }
+        queue = grown;
+        queueHead = 0;
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    /**
+     * Spawns a ball at the specified coordinates.
+     * Sets the initial position and random velocity for the ball.
+     * @param id The slot of the ball.
+     * @param tileX The X-coordinate of the spawn location.
+     * @param tileY The Y-coordinate of the spawn location.
+    */
+    public void spawn(int id, int tileX, int tileY) {
+        x[id] = tileX + spawnOffset[id];
+        y[id] = tileY + spawnOffset[id];
+        prevX[id] = x[id];
+        prevY[id] = y[id];
+
+        // Set random initial velocities in both X and Y directions
+        xVel[id] = (random.nextInt(2) == 0) ? -2 : 2;
+        yVel[id] = (random.nextInt(2) == 0) ? -2 : 2;
+
+        spawned[id] = true;
+    }
+
+    /**
+     * Get a ball waiting in the queue.
+     * @param position The position in the queue, 0 being the next ball to spawn.
+     * @return The slot of the ball.
+    */
+    public int queued(int position) {
+        return queue[(queueHead + position) % queue.length];
+    }
+
+    /**
+     * Take the next ball off the queue and put it in play.
+     * @return The slot of the ball.
+    */
+    public int activateNext() {
+        int id = queue[queueHead];
+        queueHead = (queueHead + 1) % queue.length;
+        queueCount--;
+        activeIndex[id] = activeCount;
+        active[activeCount++] = id;
+        return id;
+    }
+
+    /**
+     * Take a ball out of play, moving the last ball in play into its place.
+     * @param id The slot of the ball.
+     * @param requeue Whether the ball goes to the back of the queue (wrong hole) rather than being sunk.
+    */
+    private void deactivate(int id, boolean requeue) {
+        int index = activeIndex[id];
+        int last = active[--activeCount];
+        active[index] = last;
+        activeIndex[last] = index;
+        if (requeue) {
+            queue[(queueHead + queueCount) % queue.length] = id;
+            queueCount++;
+        }
+        else {
+            sunkCount++;
+        }
+    }
+
+    /**
+     * Put balls from the queue in play until enough are, then update every ball in play for one tick.
+     * @param engine The game engine the balls belong to.
+     * @param target The number of balls that should be in play.
+    */
+    public void updateActive(GameEngine engine, int target) {
+        activate(target);
+        for (int i = 0; i < activeCount; ) {
+            int id = active[i];
+            update(engine, id);
+            if (i < activeCount && active[i] == id) {
+                i++; // Otherwise the ball left play and the last ball took its place, so update that one next
+            }
+        }
+    }
+
+    /**
+     * Put balls from the queue in play until enough are.
+     * @param target The number of balls that should be in play.
+    */
+    public void activate(int target) {
+        while (activeCount < target && queueCount > 0) {
+            activateNext(); // Spawned at a spawner by its first update
+        }
+    }
+
+    /**
+     * Updates one ball's position and velocity for one tick of the simulation.
+     * Fast balls are moved in several smaller sub-steps so holes and
+     * accelerators are not skipped; walls and lines are swept, so they can't
+     * be skipped at any speed.
+     * @param engine The game engine the ball belongs to.
+     * @param id The slot of the ball.
+    */
+    public void update(GameEngine engine, int id) {
+        update(engine, id, worker);
+    }
+
+    /**
+     * Updates one ball for one tick with the scratch state of a worker.
+     * @param engine The game engine the ball belongs to.
+     * @param id The slot of the ball.
+     * @param w The worker of the calling thread.
+    */
+    void update(GameEngine engine, int id, Worker w) {
+        // If the ball hasn't been spawned yet, spawn it at a random spawner location
+        if (!spawned[id]) {
+            int spawner = random.nextInt(engine.spawnerCount);
+            int[] spawnLoc = engine.spawnLoc[spawner];
+            spawn(id, spawnLoc[0], spawnLoc[1]);
+            engine.events.publish(GameEvents.SPAWN, engine.tick, id, colour[id], x[id], y[id], 0);
+        }
+        prevX[id] = x[id];
+        prevY[id] = y[id];
+
+        // Split the tick so no sub-step moves the ball further than half a cell
+        float distance = Math.max(Math.abs(xVel[id]), Math.abs(yVel[id])) * engine.tickScale / App.CELLSIZE;
+        int subSteps = 1;
+        if (distance > MAX_STEP_DISTANCE) {
+            subSteps = (int) Math.ceil(distance / MAX_STEP_DISTANCE);
+        }
+        w.stepScale = engine.tickScale / subSteps;
+        for (int i = 0; i < subSteps && spawned[id] && !sunk[id]; i++) {
+            move(engine, id, w);
+        }
+        w.stepScale = 1;
+    }
+
+    /**
+     * Moves a ball by one sub-step and applies wall, hole and line collisions.
+     * @param engine The game engine the ball belongs to.
+     * @param id The slot of the ball.
+     * @param w The worker of the calling thread.
+    */
+    private void move(GameEngine engine, int id, Worker w) {
+        // If the game is not paused, move the ball, bouncing off every wall and line on the way
+        float r = radius[id];
+        sweep(engine, id, r, engine.paused ? 0 : 1, w);
+
+        // Check the walls the ball is on, for probes that started inside a wall, wall colours and accelerators
+        yVel[id] = wallCollisionCheck(engine, id, r, 0, yVel[id], 1, w); // Top check
+        yVel[id] = wallCollisionCheck(engine, id, r, r*2, yVel[id], -1, w); // Bottom Check
+        xVel[id] = wallCollisionCheck(engine, id, 0, r, xVel[id], 1, w); // Right Check
+        xVel[id] = wallCollisionCheck(engine, id, r*2, r, xVel[id], -1, w); // Left Check
+
+        // Check if near hole and apply required logic
+        holeCollisionCheck(engine, id, x[id] + spawnOffset[id], y[id] + spawnOffset[id], w);
+    }
+
+    /**
+     * Moves a ball along its velocity for part of a sub-step, stopping at each
+     * wall or line it touches on the way to bounce off it and carrying on
+     * with the time left.
+     * @param engine The game engine holding the board and lines.
+     * @param id The slot of the ball.
+     * @param r The radius of the ball.
+     * @param fraction The fraction of the sub-step to move for (0 only checks for lines the ball is touching).
+     * @param w The worker of the calling thread.
+    */
+    private void sweep(GameEngine engine, int id, float r, float fraction, Worker w) {
+        float remaining = fraction;
+        for (int contact = 0; ; contact++) {
+            float dx = xVel[id] * w.stepScale / App.CELLSIZE * remaining; // Movement left in this sub-step (cells)
+            float dy = yVel[id] * w.stepScale / App.CELLSIZE * remaining;
+
+            // Earliest wall entered by a probe heading towards its side of the ball
+            float wallTime = Float.POSITIVE_INFINITY;
+            int wallProbe = -1;
+            int wallCell = 0;
+            for (int p = 0; p < PROBE_DIR.length; p++) {
+                float toward = (p < 2) ? yVel[id] : xVel[id];
+                if (toward * PROBE_DIR[p] >= 0) {
+                    continue; // Moving away from or along this side
+                }
+                float t = castRay(engine.grid, x[id] + PROBE_X[p] * r / App.CELLSIZE, y[id] + PROBE_Y[p] * r / App.CELLSIZE, dx, dy, w);
+                if (t >= 0 && t < wallTime) {
+                    wallTime = t;
+                    wallProbe = p;
+                    wallCell = w.rayCell;
+                }
+            }
+
+            // Earliest line touched by the ball's centre, within the same distance the lines were always tested at,
+            // passing over lines this ball has already bounced off in a deferred update as they are as good as removed
+            Line l = engine.lineIndex.sweep(x[id] * App.CELLSIZE + r, y[id] * App.CELLSIZE + App.TOPBAR + r, dx * App.CELLSIZE, dy * App.CELLSIZE, (int) r + 5,
+                w.lines, w.ballFirst, w.bounceCount, w.hit);
+            float lineTime = (l != null) ? w.hit.time : Float.POSITIVE_INFINITY;
+
+            if (wallProbe == -1 && l == null) {
+                x[id] += dx;
+                y[id] += dy;
+                return;
+            }
+
+            // Move up to the contact and bounce
+            float t = Math.min(wallTime, lineTime);
+            x[id] += dx * t;
+            y[id] += dy * t;
+            remaining *= 1 - t;
+            if (lineTime <= wallTime) {
+                bounceOffLine(engine, id, l, w.hit.segment, w.hit.scanned, w);
+            }
+            else {
+                bounceOffWall(id, wallProbe, wallCell);
+            }
+            if (contact == MAX_CONTACTS) {
+                return; // Wedged between contacts, so wait for the next sub-step
+            }
+        }
+    }
+
+    /**
+     * Find where a point moving in a straight line first enters a wall cell.
+     * The cell the point starts in is not counted. The collision data of the
+     * wall is left in the worker's rayCell.
+     * @param grid The collision grid of the board.
+     * @param px The x position of the point in cells.
+     * @param py The y position of the point in cells.
+     * @param dx The x movement of the point in cells.
+     * @param dy The y movement of the point in cells.
+     * @param w The worker of the calling thread.
+     * @return The fraction of the movement (0 to 1) at which the point enters a wall, or -1 if it doesn't.
+    */
+    private float castRay(CollisionGrid grid, float px, float py, float dx, float dy, Worker w) {
+        // Step from cell boundary to cell boundary along the ray
+        int cellX = (int) Math.floor(px);
+        int cellY = (int) Math.floor(py);
+        int stepX = (dx > 0) ? 1 : -1;
+        int stepY = (dy > 0) ? 1 : -1;
+        float deltaX = (dx != 0) ? 1 / Math.abs(dx) : Float.POSITIVE_INFINITY; // Time to cross a whole cell
+        float deltaY = (dy != 0) ? 1 / Math.abs(dy) : Float.POSITIVE_INFINITY;
+        float nextX = (dx > 0) ? (cellX + 1 - px) * deltaX : (dx < 0) ? (px - cellX) * deltaX : Float.POSITIVE_INFINITY; // Time of the next boundary
+        float nextY = (dy > 0) ? (cellY + 1 - py) * deltaY : (dy < 0) ? (py - cellY) * deltaY : Float.POSITIVE_INFINITY;
+        while (true) {
+            float t;
+            if (nextX < nextY) {
+                t = nextX;
+                cellX += stepX;
+                nextX += deltaX;
+            }
+            else {
+                t = nextY;
+                cellY += stepY;
+                nextY += deltaY;
+            }
+            if (t > 1) {
+                return -1;
+            }
+            int cell = grid.get(cellX, cellY); // Cells outside the board are solid, so balls can't leave it
+            if ((cell & CollisionGrid.SOLID) != 0) {
+                w.rayCell = cell;
+                return t;
+            }
+        }
+    }
+
+    /**
+     * Bounce a ball off the wall one of its probes has just reached.
+     * @param id The slot of the ball.
+     * @param probe The probe touching the wall.
+     * @param cell The collision data of the wall.
+    */
+    private void bounceOffWall(int id, int probe, int cell) {
+        if (probe < 2) {
+            yVel[id] = -yVel[id];
+        }
+        else {
+            xVel[id] = -xVel[id];
+        }
+        char wallColour = CollisionGrid.colour(cell);
+        if (wallColour != ' ') {
+            colour[id] = wallColour; // Change ball color based on tile type
+        }
+    }
+
+    /**
+     * Reflect a ball off a line segment it touches, and remove the line (or record the bounce, while deferred).
+     * @param engine The game engine holding the lines.
+     * @param id The slot of the ball.
+     * @param l The line touched.
+     * @param seg The index of the segment touched.
+     * @param scanned The number of index entries tested to find the line.
+     * @param w The worker of the calling thread.
+    */
+    private void bounceOffLine(GameEngine engine, int id, Line l, int seg, int scanned, Worker w) {
+        if (w.deferred) {
+            w.record(l, seg, scanned, x[id], y[id], colour[id]);
+        }
+        else {
+            lineBounced(engine, id, l, seg, scanned, x[id], y[id], colour[id]);
+        }
+
+        // Get normal vector of close line segment
+        float normalX = -(l.segmentY2(seg) - l.segmentY1(seg));
+        float normalY = l.segmentX2(seg) - l.segmentX1(seg);
+        float length = (float) Math.sqrt(normalX * normalX + normalY * normalY);
+        if (length != 0 && length != 1) {
+            normalX /= length;
+            normalY /= length;
+        }
+
+        // Acquire new velocity after bounce
+        float dotProduct = xVel[id] * normalX + yVel[id] * normalY;
+        xVel[id] = xVel[id] - normalX * (2 * dotProduct);
+        yVel[id] = yVel[id] - normalY * (2 * dotProduct);
+    }
+
+    /**
+     * Report a ball's bounce off a line and remove the line.
+     * @param engine The game engine holding the lines.
+     * @param id The slot of the ball.
+     * @param l The line touched.
+     * @param seg The index of the segment touched.
+     * @param scanned The number of index entries tested to find the line.
+     * @param ballX The X position of the ball at the bounce.
+     * @param ballY The Y position of the ball at the bounce.
+     * @param ballColour The colour of the ball at the bounce.
+    */
+    private void lineBounced(GameEngine engine, int id, Line l, int seg, int scanned, float ballX, float ballY, char ballColour) {
+        engine.events.publish(GameEvents.LINE_BOUNCE, engine.tick, id, ballColour, ballX, ballY, l.order);
+        JfrEvents.LineBounce event = new JfrEvents.LineBounce();
+        if (event.shouldCommit()) {
+            event.line = l.order;
+            event.segment = seg;
+            event.lineSegments = l.size();
+            event.scanned = scanned;
+            event.commit();
+        }
+        engine.removeLine(l);
+    }
+
+    /**
+     * Apply what a deferred update of a ball recorded: remove the lines it
+     * bounced off, in order, and score its capture, exactly as the update
+     * would have done on the engine's thread.
+     * @param engine The game engine the ball belongs to.
+     * @param id The slot of the ball.
+     * @param w The worker that updated the ball.
+     * @param from The first bounce recorded for the ball.
+     * @param to One past the last bounce recorded for the ball.
+     * @param hole The hole the ball fell into, or -1.
+    */
+    void commit(GameEngine engine, int id, Worker w, int from, int to, int hole) {
+        for (int i = from; i < to; i++) {
+            lineBounced(engine, id, w.lines[i], w.segments[i], w.scanned[i], w.bounceX[i], w.bounceY[i], w.bounceColour[i]);
+        }
+        if (hole != -1) {
+            captured(engine, id, hole);
+        }
+    }
+
+    /**
+     * Checks for collisions with walls and flips velocity if necessary.
+     * @param engine The game engine holding the board.
+     * @param id The slot of the ball.
+     * @param xOffset Offset in X direction for collision detection.
+     * @param yOffset Offset in Y direction for collision detection.
+     * @param velToFlip The velocity to be flipped (either X or Y).
+     * @param postFlipDir The desired direction after the flip (positive for right/down).
+     * @return The updated velocity after collision handling.
+    */
+    public float wallCollisionCheck(GameEngine engine, int id, float xOffset, float yOffset, float velToFlip, int postFlipDir) { // postFlipDir has down and right as positive
+        return wallCollisionCheck(engine, id, xOffset, yOffset, velToFlip, postFlipDir, worker);
+    }
+
+    private float wallCollisionCheck(GameEngine engine, int id, float xOffset, float yOffset, float velToFlip, int postFlipDir, Worker w) {
+        int xTileVal = (int) (x[id] + xOffset/App.CELLSIZE);
+        int yTileVal = (int) (y[id] + yOffset/App.CELLSIZE);
+        int cell = engine.grid.get(xTileVal, yTileVal);
+
+        // Check for collisions with walls and update ball color based on wall type
+        if ((cell & CollisionGrid.SOLID) != 0) {
+            if (Math.abs(velToFlip) * postFlipDir == velToFlip * -1) { // Flip the velocity if necessary
+                velToFlip *= -1;
+            }
+            char wallColour = CollisionGrid.colour(cell);
+            if (wallColour != ' ') {
+                colour[id] = wallColour; // Change ball color based on tile type
+            }
+        }
+
+        // Handle accelerator tiles ('A') which change ball speed
+        int direction = CollisionGrid.accel(cell);
+        if (direction != 0) {
+            float accel = 0.2f * w.stepScale; // Acceleration factor
+            switch (direction) {
+                case 1: yVel[id] -= accel; break; // Accelerate upwards
+                case 2: xVel[id] += accel; break; // Accelerate right
+                case 3: yVel[id] += accel; break; // Accelerate downwards
+                case 4: xVel[id] -= accel; break; // Accelerate left
+            }
+        }
+        return velToFlip;
+    }
+
+    /**
+     * Checks if a ball has collided with a hole and handles sinking behavior.
+     * @param engine The game engine holding the board, balls and score.
+     * @param id The slot of the ball.
+     * @param xBallCentre The X-coordinate of the ball's center.
+     * @param yBallCentre The Y-coordinate of the ball's center.
+    */
+    public void holeCollisionCheck(GameEngine engine, int id, float xBallCentre, float yBallCentre) {
+        holeCollisionCheck(engine, id, xBallCentre, yBallCentre, worker);
+    }
+
+    private void holeCollisionCheck(GameEngine engine, int id, float xBallCentre, float yBallCentre, Worker w) {
+        // Look up the hole in range of the ball's cell, if any
+        HoleField holes = engine.holes;
+        int hole = holes.holeAt((int) x[id], (int) y[id]);
+
+        // The ball is near a hole
+        if (hole != -1) {
+            // Calculate the squared distance from the ball to the hole
+            float xHoleVector = holes.centreX[hole] - xBallCentre;
+            float yHoleVector = holes.centreY[hole] - yBallCentre;
+            double distanceSq = (double) xHoleVector * xHoleVector + (double) yHoleVector * yHoleVector;
+
+            // Handle scoring if the ball is close enough to the hole
+            if (distanceSq <= HoleField.CAPTURE_DISTANCE_SQ) {
+                if (w.deferred) {
+                    // Stop the ball as the capture would, and leave the scoring to the commit
+                    w.captureHole = hole;
+                    if (correctHole(holes.colour[hole], colour[id])) {
+                        sunk[id] = true;
+                    }
+                    else {
+                        spawned[id] = false;
+                    }
+                }
+                else {
+                    captured(engine, id, hole);
+                }
+            }
+            // Ball is near the hole, apply attraction force
+            else if (distanceSq <= HoleField.ATTRACT_DISTANCE_SQ) {
+                xVel[id] += xHoleVector * 0.5f * w.stepScale;
+                yVel[id] += yHoleVector * 0.5f * w.stepScale;
+                if (distanceSq <= HoleField.STRONG_ATTRACT_DISTANCE_SQ) {
+                    xVel[id] += xHoleVector * w.stepScale;
+                    yVel[id] += yHoleVector * w.stepScale;
+                }
+                size[id] = (float) Math.sqrt(distanceSq) * defaultSize[id]; // Only needed while shrinking
+            }
+        }
+        // Reset ball size if not near a hole
+        else {
+            size[id] = defaultSize[id];
+        }
+    }
+
+    /**
+     * Score a ball falling into a hole and take it out of play.
+     * @param engine The game engine holding the holes, balls and score.
+     * @param id The slot of the ball.
+     * @param hole The hole the ball fell into.
+    */
+    private void captured(GameEngine engine, int id, int hole) {
+        HoleField holes = engine.holes;
+        char ballColour = colour[id];
+        char holeColour = holes.colour[hole];
+        int scoreBefore = engine.currScore;
+        boolean correct;
+        // Ball sinks into the correct hole, increase score
+        if (correctHole(holeColour, ballColour)) {
+            engine.currScore += engine.scoreInc[ballColour - '0'];
+            leavePlay(engine, id, false);
+            engine.rightHoleCount += 1;
+            sunk[id] = true;
+            correct = true;
+        }
+        // Ball sinks into the wrong hole, decrease score
+        else {
+            if (engine.currScore - engine.scoreDec[ballColour - '0'] < 0) {
+                engine.currScore = 0;
+            }
+            else {
+                engine.currScore -= engine.scoreDec[ballColour - '0'];
+            }
+            leavePlay(engine, id, true);
+            spawned[id] = false;
+            engine.wrongHoleCount += 1;
+            correct = false;
+        }
+
+        engine.events.publish(correct ? GameEvents.CAPTURE : GameEvents.WRONG_HOLE, engine.tick, id, ballColour,
+            x[id], y[id], engine.currScore - scoreBefore);
+        JfrEvents.Capture event = new JfrEvents.Capture();
+        if (event.shouldCommit()) {
+            event.colour = ballColour;
+            event.holeColour = holeColour;
+            event.holeX = holes.centreX[hole];
+            event.holeY = holes.centreY[hole];
+            event.correct = correct;
+            event.scoreDelta = engine.currScore - scoreBefore;
+            event.commit();
+        }
+    }
+
+    // Whether a ball of a colour scores in a hole of a colour, grey matching everything
+    private static boolean correctHole(char holeColour, char ballColour) {
+        return holeColour == ballColour || holeColour == '0' || ballColour == '0';
+    }
+
+    /**
+     * Write every ball and the lifecycle partitions to a snapshot, one array after another.
+     * @param out The snapshot being saved.
+     * @throws IOException If the snapshot can't be written.
+    */
+    void write(Snapshot out) throws IOException {
+        out.putInt(count);
+        out.putFloats(x, count);
+        out.putFloats(y, count);
+        out.putFloats(prevX, count);
+        out.putFloats(prevY, count);
+        out.putFloats(xVel, count);
+        out.putFloats(yVel, count);
+        out.putFloats(size, count);
+        out.putFloats(defaultSize, count);
+        out.putFloats(radius, count);
+        out.putFloats(spawnOffset, count);
+        for (int i = 0; i < count; i++) {
+            out.putByte(colour[i]);
+            out.putByte((spawned[i] ? 1 : 0) | (sunk[i] ? 2 : 0));
+        }
+
+        // Order matters, as balls are updated and spawned in it
+        out.putInt(activeCount);
+        for (int i = 0; i < activeCount; i++) {
+            out.putVarInt(active[i]);
+        }
+        out.putInt(queueCount);
+        for (int i = 0; i < queueCount; i++) {
+            out.putVarInt(queued(i));
+        }
+        out.putInt(sunkCount);
+    }
+
+    /**
+     * Read balls written by {@link #write}.
+     * @param in The snapshot being loaded.
+     * @param colours The number of ball colours, which every ball's colour must be one of.
+     * @return A store holding the balls.
+     * @throws IOException If the snapshot can't be read or is damaged.
+    */
+    static BallStore read(Snapshot in, int colours) throws IOException {
+        int count = in.getCount(1 << 24);
+        BallStore store = new BallStore(count);
+        store.count = count;
+        in.getFloats(store.x, count);
+        in.getFloats(store.y, count);
+        in.getFloats(store.prevX, count);
+        in.getFloats(store.prevY, count);
+        in.getFloats(store.xVel, count);
+        in.getFloats(store.yVel, count);
+        in.getFloats(store.size, count);
+        in.getFloats(store.defaultSize, count);
+        in.getFloats(store.radius, count);
+        in.getFloats(store.spawnOffset, count);
+        for (int i = 0; i < count; i++) {
+            store.colour[i] = (char) in.getByte();
+            if (store.colour[i] < '0' || store.colour[i] >= '0' + colours) {
+                throw new IOException("Malformed snapshot");
+            }
+            int flags = in.getByte();
+            store.spawned[i] = (flags & 1) != 0;
+            store.sunk[i] = (flags & 2) != 0;
+        }
+
+        store.activeCount = in.getCount(count);
+        for (int i = 0; i < store.activeCount; i++) {
+            int id = readSlot(in, count);
+            store.active[i] = id;
+            store.activeIndex[id] = i;
+        }
+        store.queueCount = in.getCount(count - store.activeCount);
+        for (int i = 0; i < store.queueCount; i++) {
+            store.queue[i] = readSlot(in, count);
+        }
+        store.sunkCount = in.getCount(count);
+        return store;
+    }
+
+    // Read a slot number and check it is one of the store's
+    private static int readSlot(Snapshot in, int count) throws IOException {
+        int id = in.getVarInt();
+        if (id < 0 || id >= count) {
+            throw new IOException("Malformed snapshot");
+        }
+        return id;
+    }
+
+    /**
+     * Take a captured ball out of play.
+     * @param engine The game engine the ball belongs to.
+     * @param id The slot of the ball.
+     * @param requeue Whether the ball goes to the back of the queue (wrong hole) rather than being sunk.
+    */
+    private void leavePlay(GameEngine engine, int id, boolean requeue) {
+        if (engine.balls != this) {
+            return; // Not one of the engine's balls, so it isn't in play there
+        }
+        deactivate(id, requeue);
+    }
+}
@@ -0,0 +1,70 @@
+package inkball;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Metadata shared by every ball of the same colour.
+ *
+ * The size of a ball comes from the width of its sprite. Each ball sprite is
+ * decoded once when this class is loaded, instead of once for every ball
+ * created, so loading a level with many balls does no image decoding.
+ *
+ * Responsibilities of the BallTypes class include:
+ * - Reading the size of each ball sprite once.
+ * - Giving the radius, spawn offset and default size of each colour.
+*/
+public final class BallTypes {
+    public static final float[] RADIUS; // Radius of each ball colour (half the sprite width)
+    public static final float[] SPAWN_OFFSET; // Offset to center a ball of each colour in its spawn tile
+    public static final float[] DEFAULT_SIZE; // Drawn size of each ball colour when not shrinking into a hole
+
+    static {
+        int colours = App.COLOURS.length;
+        RADIUS = new float[colours];
+        SPAWN_OFFSET = new float[colours];
+        DEFAULT_SIZE = new float[colours];
+        for (int i = 0; i < colours; i++) {
+            RADIUS[i] = readRadius((char) ('0' + i));
+            SPAWN_OFFSET[i] = 0.5f - (RADIUS[i] / App.CELLSIZE);
+            DEFAULT_SIZE[i] = RADIUS[i] * 2;
+        }
+    }
+
+    private BallTypes() {
+    }
+
+    /**
+     * Get the radius of a ball colour.
+     * @param colour The colour of the ball as a digit character.
+     * @return The radius of the ball, or 0 if there is no sprite for the colour.
+    */
+    public static float radius(char colour) {
+        int i = colour - '0';
+        return (i >= 0 && i < RADIUS.length) ? RADIUS[i] : 0;
+    }
+
+    /**
+     * Decode a ball sprite to find its radius.
+     * @param colour The colour of the ball.
+     * @return The radius of the ball, or 0 if the sprite can't be read.
+    */
+    private static float readRadius(char colour) {
+        float radius = 0;
+        // Load the ball image from resources based on the ball color
+        try (InputStream input = BallTypes.class.getResourceAsStream("/inkball/ball" + colour + ".png")) {
+            if (input != null) {
+                BufferedImage ballImage = ImageIO.read(input);
+                radius = ballImage.getWidth() / 2; // Set radius as half the width of the image
+            } else {
+                System.out.println("Error: Resource not found");
+            }
+        } catch (IOException e) {
+            System.out.println("Error loading image");
+            e.printStackTrace();
+        }
+        return radius;
+    }
+}
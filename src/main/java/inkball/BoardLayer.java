@@ -0,0 +1,131 @@
+package inkball;
+
+import processing.core.PGraphics;
+
+/**
+ * An offscreen image of the visible part of the static game board.
+ *
+ * Walls, holes, spawners and accelerators don't change while a level is
+ * played, so the cells in view are drawn into this layer once and the whole
+ * layer is drawn to the screen with a single image call every frame. The
+ * layer is one cell larger than the view each way, so it only has to be
+ * drawn again when the camera scrolls onto a new column or row of cells, or a
+ * new level is loaded. Tiles changed through {@link GameEngine#setTile} are
+ * drawn into the layer again on the next frame, along with the rows around
+ * them that multi-cell sprites such as holes reach into. Only cells in view
+ * are ever drawn, however large the board is.
+ *
+ * Responsibilities of the BoardLayer class include:
+ * - Drawing the cells in view after a new level is loaded or the view moves to other cells.
+ * - Drawing again only the rows around tiles that have changed.
+ * - Drawing the cached board to the screen.
+*/
+public class BoardLayer {
+    private static final int COLS = App.VIEW_WIDTH + 1; // Cells across the layer
+    private static final int ROWS = App.VIEW_HEIGHT + 1; // Cells down the layer
+
+    private PGraphics graphics; // Offscreen image of the cells in view, without the top bar
+    private int version = -1; // Board version of the engine the layer was last drawn from
+    private int originCol; // Board column of the layer's left edge
+    private int originRow; // Board row of the layer's top edge
+    private boolean[] dirtyRows = new boolean[ROWS]; // Scratch flags for the layer rows to draw again
+
+    public int tilesDrawn; // Number of tiles drawn into the layer in the last frame, for profiling
+
+    /**
+     * Bring the layer up to date with the engine's board and the camera, and draw it
+     * to the screen. Must be called while the camera's offset is applied.
+     * @param app The main App object.
+    */
+    public void draw(App app) {
+        GameEngine engine = app.engine;
+        Camera camera = app.camera;
+        if (graphics == null) {
+            graphics = app.createGraphics(COLS * App.CELLSIZE, ROWS * App.CELLSIZE);
+        }
+
+        tilesDrawn = 0;
+        if (version != engine.boardVersion || originCol != camera.firstCol() || originRow != camera.firstRow()) {
+            version = engine.boardVersion;
+            originCol = camera.firstCol();
+            originRow = camera.firstRow();
+            engine.clearDirtyTiles(); // The full redraw covers every change
+            graphics.beginDraw();
+            drawRows(app, -1, ROWS - 1);
+            graphics.endDraw();
+        }
+        else if (engine.dirtyTileCount > 0) {
+            redrawDirty(app);
+        }
+
+        app.image(graphics, originCol * App.CELLSIZE, originRow * App.CELLSIZE + App.TOPBAR);
+    }
+
+    /**
+     * Draw again the rows touched by the tiles changed since the last frame.
+     * A tile's sprite can reach one row down (holes), so each changed row is
+     * drawn together with the rows above and below it, clipped to that band.
+     * @param app The main App object.
+    */
+    private void redrawDirty(App app) {
+        GameEngine engine = app.engine;
+        boolean any = false;
+        for (int i = 0; i < engine.dirtyTileCount; i++) {
+            int row = engine.dirtyTiles[i] / engine.board.width - originRow;
+            for (int r = Math.max(0, row - 1); r <= Math.min(ROWS - 1, row + 1); r++) {
+                dirtyRows[r] = true;
+                any = true;
+            }
+        }
+        engine.clearDirtyTiles();
+        if (!any) {
+            return; // Every change is out of view, and will be drawn when the view reaches it
+        }
+
+        graphics.beginDraw();
+        int r = 0;
+        while (r < ROWS) {
+            if (!dirtyRows[r]) {
+                r++;
+                continue;
+            }
+            int first = r;
+            while (r < ROWS && dirtyRows[r]) {
+                dirtyRows[r] = false;
+                r++;
+            }
+            int last = r - 1;
+
+            // Clip to the band, but start a row higher so holes reaching into it are drawn too
+            graphics.clip(0, first * App.CELLSIZE, COLS * App.CELLSIZE, (last - first + 1) * App.CELLSIZE);
+            drawRows(app, first - 1, last);
+            graphics.noClip();
+        }
+        graphics.endDraw();
+    }
+
+    /**
+     * Draw the tiles in a range of layer rows into the layer. Rows and columns
+     * off the board are left as background, and tiles one column to the left
+     * and one row above the range are drawn too so holes reaching into it show.
+     * @param app The main App object.
+     * @param first The first layer row to draw, which may be -1.
+     * @param last The last layer row to draw.
+    */
+    private void drawRows(App app, int first, int last) {
+        TileMap board = app.engine.board;
+        graphics.noStroke();
+        graphics.fill(200, 200, 200); // Clear to the background colour under the rows
+        graphics.rect(0, Math.max(0, first) * App.CELLSIZE, COLS * App.CELLSIZE, (last - Math.max(0, first) + 1) * App.CELLSIZE);
+        int lastRow = Math.min(board.height - 1, originRow + last);
+        int lastCol = Math.min(board.width - 1, originCol + COLS - 1);
+        for (int i = Math.max(0, originRow + first); i <= lastRow; i++) {
+            for (int j = Tile.tileStart(board, Math.max(0, originCol - 1), i); j <= lastCol; j++) {
+                tilesDrawn++;
+                if (Tile.draw(app, graphics, board, j, i, (j - originCol) * App.CELLSIZE, (i - originRow) * App.CELLSIZE)) {
+                    j++;
+                }
+            }
+        }
+    }
+}
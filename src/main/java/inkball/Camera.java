@@ -0,0 +1,107 @@
+package inkball;
+
+/**
+ * The part of the board shown in the window, for levels larger than the window.
+ *
+ * The camera keeps a scroll offset in pixels. Board positions (in the pixel
+ * coordinates lines use, with row 0 just below the top bar) are drawn at
+ * their position minus the offset, and mouse positions are turned back into
+ * board positions by adding it. The offset is kept between zero and the size
+ * of the board minus the size of the view, so a level that fits in the window
+ * never scrolls and is drawn exactly where it always was.
+ *
+ * Drawing asks the camera which cells are visible and whether an object's
+ * bounding box is, so only what can be seen is drawn and the cost of a frame
+ * depends on the size of the window rather than the size of the level.
+ *
+ * Responsibilities of the Camera class include:
+ * - Keeping the scroll offset within the board.
+ * - Converting between window and board positions.
+ * - Working out which cells and objects are visible.
+*/
+public class Camera {
+    public static final float SCROLL_SPEED = 16 * App.CELLSIZE; // Pixels scrolled per second while an arrow key is held
+
+    public float x; // Scroll offset across, in pixels
+    public float y; // Scroll offset down, in pixels
+    public final int viewWidth; // Width of the visible part of the board, in pixels
+    public final int viewHeight; // Height of the visible part of the board, in pixels
+    private int boardWidth; // Width of the board, in pixels
+    private int boardHeight; // Height of the board, in pixels
+
+    /**
+     * Constructor for the Camera object.
+     * @param viewWidth The width of the visible part of the board, in pixels.
+     * @param viewHeight The height of the visible part of the board, in pixels.
+    */
+    public Camera(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+
+    /**
+     * Show a new board from its top left corner.
+     * @param cols The number of cells across the board.
+     * @param rows The number of cells down the board.
+    */
+    public void setBoard(int cols, int rows) {
+        boardWidth = cols * App.CELLSIZE;
+        boardHeight = rows * App.CELLSIZE;
+        x = 0;
+        y = 0;
+    }
+
+    /**
+     * Scroll the view, stopping at the edges of the board.
+     * @param dx The distance to scroll across, in pixels.
+     * @param dy The distance to scroll down, in pixels.
+    */
+    public void scroll(float dx, float dy) {
+        x = Math.max(0, Math.min(x + dx, boardWidth - viewWidth));
+        y = Math.max(0, Math.min(y + dy, boardHeight - viewHeight));
+    }
+
+    /**
+     * Get the first column with any part visible.
+     * @return The column index.
+    */
+    public int firstCol() {
+        return (int) (x / App.CELLSIZE);
+    }
+
+    /**
+     * Get the last column with any part visible, which may be past the edge of the board.
+     * @return The column index.
+    */
+    public int lastCol() {
+        return (int) ((x + viewWidth - 1) / App.CELLSIZE);
+    }
+
+    /**
+     * Get the first row with any part visible.
+     * @return The row index.
+    */
+    public int firstRow() {
+        return (int) (y / App.CELLSIZE);
+    }
+
+    /**
+     * Get the last row with any part visible, which may be past the edge of the board.
+     * @return The row index.
+    */
+    public int lastRow() {
+        return (int) ((y + viewHeight - 1) / App.CELLSIZE);
+    }
+
+    /**
+     * Whether any part of a box is visible.
+     * @param minX The left edge of the box in board pixels.
+     * @param minY The top edge of the box in board pixels (including the top bar, as lines are stored).
+     * @param maxX The right edge of the box in board pixels.
+     * @param maxY The bottom edge of the box in board pixels (including the top bar).
+     * @return true if the box overlaps the view.
+    */
+    public boolean sees(float minX, float minY, float maxX, float maxY) {
+        return maxX >= x && minX < x + viewWidth && maxY >= y + App.TOPBAR && minY < y + App.TOPBAR + viewHeight;
+    }
+}
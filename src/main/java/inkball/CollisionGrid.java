@@ -0,0 +1,165 @@
+package inkball;
+
+/**
+ * The board's tiles compiled into one byte per cell for collision checks.
+ *
+ * Reading a tile's character, checking whether it is a digit and looking at
+ * its neighbours to find out whether it is really a wall, the colour half of a
+ * hole, or the direction half of an accelerator is done once when the level
+ * is loaded. Ball collision checks then read a single byte per cell.
+ *
+ * Each cell holds:
+ * - {@link #SOLID} if balls bounce off the cell.
+ * - A colour (plus one, so zero means none) in the bits of {@link #COLOUR_MASK}:
+ *   the colour a wall paints a ball, or the colour of the hole a cell belongs to.
+ * - {@link #HOLE} if the cell is one of the four cells of a hole. The bits
+ *   {@link #HOLE_LEFT} and {@link #HOLE_UP} then tell whether the hole's top
+ *   left cell is one to the left and one up from this cell.
+ * - Otherwise, the direction of an accelerator (1 up, 2 right, 3 down, 4 left)
+ *   in the bits of {@link #ACCEL_MASK}.
+ *
+ * Responsibilities of the CollisionGrid class include:
+ * - Compiling the board when a level is loaded.
+ * - Recompiling the cells around a tile that changes during a level.
+ * - Decoding the collision data of a cell.
+*/
+public class CollisionGrid {
+    // Cell bits
+    public static final int SOLID = 0x01; // Balls bounce off this cell
+    public static final int COLOUR_MASK = 0x0E; // Wall or hole colour plus one, zero for none
+    public static final int COLOUR_SHIFT = 1;
+    public static final int ACCEL_MASK = 0x70; // Accelerator direction, zero for none
+    public static final int ACCEL_SHIFT = 4;
+    public static final int HOLE_LEFT = 0x10; // For hole cells, the top left of the hole is one cell left
+    public static final int HOLE_UP = 0x20; // For hole cells, the top left of the hole is one cell up
+    public static final int HOLE = 0x80; // This cell is part of a hole
+
+    public final int width; // Number of cells across
+    public final int height; // Number of cells down
+    public final byte[] cells; // Compiled data of each cell, at y * width + x
+
+    /**
+     * Constructor for the CollisionGrid object, compiling a whole board.
+     * @param board The board to compile.
+    */
+    public CollisionGrid(TileMap board) {
+        height = board.height;
+        width = board.width;
+        cells = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                cells[y * width + x] = compile(board, x, y);
+            }
+        }
+    }
+
+    /**
+     * Recompile the cells whose data depends on a tile that has changed.
+     * A cell depends on the tiles next to it and the row above it.
+     * @param board The board holding the changed tile.
+     * @param tileX The x index of the changed tile.
+     * @param tileY The y index of the changed tile.
+    */
+    public void update(TileMap board, int tileX, int tileY) {
+        for (int y = Math.max(0, tileY - 1); y <= Math.min(height - 1, tileY + 1); y++) {
+            for (int x = Math.max(0, tileX - 1); x <= Math.min(width - 1, tileX + 1); x++) {
+                cells[y * width + x] = compile(board, x, y);
+            }
+        }
+    }
+
+    /**
+     * Get the compiled data of a cell. Cells outside the board are solid.
+     * @param x The x index of the cell.
+     * @param y The y index of the cell.
+     * @return The cell's data.
+    */
+    public int get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return SOLID;
+        }
+        return cells[y * width + x] & 0xFF;
+    }
+
+    /**
+     * Get the colour stored in a cell's data.
+     * @param cell The cell's data.
+     * @return The colour as a digit character, or ' ' if the cell has no colour.
+    */
+    public static char colour(int cell) {
+        int colour = (cell & COLOUR_MASK) >> COLOUR_SHIFT;
+        return colour == 0 ? ' ' : (char) ('0' + colour - 1);
+    }
+
+    /**
+     * Get the accelerator direction stored in a cell's data.
+     * @param cell The cell's data.
+     * @return The direction (1 up, 2 right, 3 down, 4 left), or 0 if the cell doesn't accelerate.
+    */
+    public static int accel(int cell) {
+        return (cell & HOLE) != 0 ? 0 : (cell & ACCEL_MASK) >> ACCEL_SHIFT;
+    }
+
+    /**
+     * Work out the data of one cell from the tiles around it.
+     * @param board The board to read.
+     * @param x The x index of the cell.
+     * @param y The y index of the cell.
+     * @return The cell's data.
+    */
+    private static byte compile(TileMap board, int x, int y) {
+        int width = board.width;
+        char type = board.get(x, y);
+        char prevType = board.get(x - 1, y);
+        int cell = 0;
+
+        // Walls, except the colour halves of holes, balls and accelerators
+        if ((Character.isDigit(type) && prevType != 'H' && prevType != 'B' && prevType != 'A') || type == 'X') {
+            cell |= SOLID;
+            if (type != 'X') {
+                cell |= colourBits(type);
+            }
+        }
+
+        // Accelerators, with the direction in the tile to the right
+        if (type == 'A' && x + 1 < width) {
+            char direction = board.get(x + 1, y);
+            if (direction >= '1' && direction <= '4') {
+                cell |= (direction - '0') << ACCEL_SHIFT;
+            }
+        }
+
+        // Holes: lower cells are flagged, and the right half holds the colour
+        int holeX = x;
+        int holeY = y;
+        if (board.get(holeX, holeY) == Tile.HOLE_FLAG && holeY - 1 >= 0) {
+            holeY--;
+        }
+        if (Character.isDigit(board.get(holeX, holeY)) && holeX - 1 >= 0) {
+            holeX--;
+        }
+        if (board.get(holeX, holeY) == 'H') {
+            cell = HOLE; // A hole cell is never a wall or an accelerator
+            if (holeX != x) {
+                cell |= HOLE_LEFT;
+            }
+            if (holeY != y) {
+                cell |= HOLE_UP;
+            }
+            if (holeX + 1 < width) {
+                cell |= colourBits(board.get(holeX + 1, holeY));
+            }
+        }
+        return (byte) cell;
+    }
+
+    /**
+     * Get the colour bits for a colour digit.
+     * @param colour The colour digit.
+     * @return The bits to store, or 0 if the colour can't be stored.
+    */
+    private static int colourBits(char colour) {
+        int value = colour - '0' + 1;
+        return (value >= 1 && value <= 7) ? value << COLOUR_SHIFT : 0;
+    }
+}
@@ -0,0 +1,188 @@
+package inkball;
+
+/**
+ * Times each phase of a rendered frame and keeps rolling percentiles.
+ *
+ * The draw loop marks the end of each phase, and the time since the previous
+ * mark is added to that phase. Finished frames go into fixed-size rolling
+ * histograms (one per phase and one for the whole frame) with 0.1 ms bins,
+ * so p50, p95 and p99 can be read at any time. Recording a frame and drawing
+ * the overlay create no objects, so the profiler doesn't disturb what it
+ * measures.
+ *
+ * Responsibilities of the FrameProfiler class include:
+ * - Timing the phases of each frame with System.nanoTime.
+ * - Keeping rolling p50/p95/p99 histograms of phase and frame times.
+ * - Drawing an overlay with the timings and the ball and segment counts.
+ * - Logging a summary line once a second when asked to.
+*/
+public class FrameProfiler {
+    // Phases of a frame, in the order they run
+    public static final int PHYSICS = 0;
+    public static final int CLEAR = 1;
+    public static final int TILES = 2;
+    public static final int BALLS = 3;
+    public static final int LINES = 4; // Lines and the level-over tiles drawn over the board
+    public static final int UPCOMING = 5;
+    public static final int HUD = 6;
+    public static final int PHASES = 7;
+    public static final String[] PHASE_NAMES = {"physics", "clear", "tiles", "balls", "lines", "upcoming", "hud"};
+
+    private static final int FRAME = PHASES; // Histogram slot of the whole frame
+    private static final long BIN_NANOS = 100_000; // Width of a histogram bin (0.1 ms)
+    private static final int BINS = 1000; // Bins per histogram, the last one holds everything from 99.9 ms up
+    private static final int WINDOW = 300; // Frames kept in the rolling histograms
+
+    public boolean overlay; // Whether the overlay is drawn
+    public boolean log; // Whether a summary is printed once a second
+
+    private final long[] phaseNanos = new long[PHASES]; // Time spent in each phase of the current frame
+    private final long[] lastNanos = new long[PHASES + 1]; // Time of each phase and the frame in the last finished frame
+    private final int[][] counts = new int[PHASES + 1][BINS]; // Rolling histogram of each phase and the frame
+    private final short[][] window = new short[PHASES + 1][WINDOW]; // Bin of each frame in the window, to remove it again
+    private int windowCount; // Frames in the window, up to WINDOW
+    private int windowNext; // Slot the next frame goes into
+    private long markNanos; // Time of the previous mark
+    private int framesSinceLog; // Frames since the last log line
+
+    public int ballCount; // Balls in play in the last frame
+    public int segmentCount; // Line segments on the board in the last frame
+
+    private final TextBuffer text = new TextBuffer(64); // Reused buffer for overlay lines
+
+    /**
+     * Start timing a frame.
+    */
+    public void startFrame() {
+        markNanos = System.nanoTime();
+    }
+
+    /**
+     * Mark the end of a phase, adding the time since the previous mark to it.
+     * @param phase The phase that just finished.
+    */
+    public void mark(int phase) {
+        long now = System.nanoTime();
+        phaseNanos[phase] += now - markNanos;
+        markNanos = now;
+    }
+
+    /**
+     * Finish the frame, adding its times to the rolling histograms.
+     * @param engine The engine, for the ball and segment counts.
+    */
+    public void endFrame(GameEngine engine) {
+        long total = 0;
+        for (int phase = 0; phase < PHASES; phase++) {
+            record(phase, phaseNanos[phase]);
+            total += phaseNanos[phase];
+            phaseNanos[phase] = 0;
+        }
+        record(FRAME, total);
+        windowNext = (windowNext + 1) % WINDOW;
+        windowCount = Math.min(WINDOW, windowCount + 1);
+
+        ballCount = engine.balls.activeCount;
+        segmentCount = engine.lineIndex.segmentCount;
+
+        if (log && ++framesSinceLog >= engine.frameRate) {
+            framesSinceLog = 0;
+            System.out.println(logLine());
+        }
+    }
+
+    /**
+     * Add one time to a histogram, removing the time it replaces once the window is full.
+     * @param slot The histogram (a phase, or the whole frame).
+     * @param nanos The time to add.
+    */
+    private void record(int slot, long nanos) {
+        lastNanos[slot] = nanos;
+        if (windowCount == WINDOW) {
+            counts[slot][window[slot][windowNext]]--;
+        }
+        int bin = (int) Math.min(BINS - 1, nanos / BIN_NANOS);
+        counts[slot][bin]++;
+        window[slot][windowNext] = (short) bin;
+    }
+
+    /**
+     * Get a percentile of a phase or of the whole frame over the window.
+     * @param phase The phase, or {@link #PHASES} for the whole frame.
+     * @param fraction The percentile as a fraction (e.g. 0.95).
+     * @return The time in milliseconds (the top of the bin it falls in), or 0 before any frame.
+    */
+    public float percentile(int phase, double fraction) {
+        if (windowCount == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * windowCount);
+        int seen = 0;
+        int[] bins = counts[phase];
+        for (int bin = 0; bin < BINS; bin++) {
+            seen += bins[bin];
+            if (seen >= rank) {
+                return (bin + 1) * BIN_NANOS / 1e6f;
+            }
+        }
+        return BINS * BIN_NANOS / 1e6f;
+    }
+
+    /**
+     * Get the time of a phase in the last finished frame.
+     * @param phase The phase, or {@link #PHASES} for the whole frame.
+     * @return The time in milliseconds.
+    */
+    public float last(int phase) {
+        return lastNanos[phase] / 1e6f;
+    }
+
+    /**
+     * Draw the overlay in the top left of the board.
+     * @param app The main App object.
+    */
+    public void draw(App app) {
+        float lineHeight = 14;
+        float x = 8;
+        float y = App.TOPBAR + 4;
+        app.noStroke();
+        app.fill(0, 0, 0, 170);
+        app.rect(x - 4, y, 270, lineHeight * (PHASES + 3) + 6);
+        app.fill(255);
+        app.textSize(12);
+
+        // Whole frame
+        text.clear().append("frame p50 ").appendHundredths(percentile(FRAME, 0.5)).append(" p95 ").appendHundredths(percentile(FRAME, 0.95))
+            .append(" p99 ").appendHundredths(percentile(FRAME, 0.99)).append(" ms");
+        y += lineHeight;
+        app.text(text.chars, 0, text.length, x, y);
+
+        // Each phase, last frame and p95
+        for (int phase = 0; phase < PHASES; phase++) {
+            text.clear().append(PHASE_NAMES[phase]).pad(10).appendHundredths(last(phase)).pad(18).append("p95 ").appendHundredths(percentile(phase, 0.95));
+            y += lineHeight;
+            app.text(text.chars, 0, text.length, x, y);
+        }
+
+        text.clear().append("balls ").append(ballCount).append("  segments ").append(segmentCount);
+        y += lineHeight;
+        app.text(text.chars, 0, text.length, x, y);
+
+        app.textSize(App.TEXT_SIZE);
+        app.fill(0);
+    }
+
+    /**
+     * Build the summary line printed when logging.
+     * @return The summary.
+    */
+    private String logLine() {
+        StringBuilder line = new StringBuilder("frame");
+        line.append(String.format(" p50=%.1f p95=%.1f p99=%.1f ms", percentile(FRAME, 0.5), percentile(FRAME, 0.95), percentile(FRAME, 0.99)));
+        for (int phase = 0; phase < PHASES; phase++) {
+            line.append(String.format(" %s=%.2f", PHASE_NAMES[phase], percentile(phase, 0.95)));
+        }
+        line.append(" balls=").append(ballCount).append(" segments=").append(segmentCount);
+        return line.toString();
+    }
+}
@@ -0,0 +1,730 @@
+package inkball;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.data.JSONObject;
+
+/**
+ * The headless simulation core of the Inkball game.
+ *
+ * The engine owns every piece of game state that affects play: the board,
+ * the balls, the player-drawn lines, the spawn timers and the score. It
+ * advances that state one tick at a time through {@link #step()} and never
+ * touches a PApplet, so it can run without a window (batch jobs, CI) and as
+ * fast as the host allows.
+ *
+ * Responsibilities of the GameEngine class include:
+ * - Loading levels from the configuration file and layout files.
+ * - Spawning balls and moving them, including wall, hole and line collisions.
+ * - Tracking time, pause state, level completion and score.
+ * - Applying player input such as drawing, erasing and resetting.
+ * - Writing and reading the state of a level in progress for {@link Snapshot}.
+*/
+public class GameEngine {
+
+    // Timing constants
+    public static final int BASE_TICK_RATE = 30; // Tick rate that ball velocities and accelerations are tuned for
+    public static final double MAX_FRAME_TIME = 0.25; // Longest frame the accumulator will catch up on (seconds)
+    public static final int EVENT_CAPACITY = 1024; // Game events buffered for listeners before new ones are dropped
+
+    // Game state variables related to board setup, configuration, and level handling
+    private JSONObject config; // JSON object to hold config data
+    public LevelCache levels; // Parsed levels, with the next one parsed in the background
+    public int levelToload; // Current level to load
+    public int levelCount; // Total number of levels
+    public long seed; // Base seed of the run, from which each level's random numbers are seeded
+    public GameRandom random; // Random numbers for the current level (spawn choices and directions)
+    public long tick; // Ticks run since the engine was created, used to time recorded input
+    public ReplayLog recorder; // Where player input is recorded, or null when not recording
+    public GameEvents events; // Captures, spawns, bounces and level ends, handed to listeners on a background thread
+
+    // Game objects and mechanics
+    public TileMap board; // Tiles of the current level, sized by its layout file
+    public int boardVersion; // Incremented whenever a new board is loaded, so cached renders know to rebuild
+    public int[] dirtyTiles; // Board index (y * width + x) of each tile changed since the last render
+    public int dirtyTileCount; // Number of entries used in dirtyTiles
+    private boolean[] tileDirty; // Whether each tile (at y * width + x) is already listed in dirtyTiles
+    public CollisionGrid grid; // Board tiles compiled for ball collision checks
+    public HoleField holes; // Hole in range of each cell, for hole checks
+    public BallStore balls; // Store holding the state of every ball in the level
+    public int setBallCount; // Count of pre-set balls from the level file
+    public int[][] spawnLoc; // Spawner locations for new balls
+    public int extraBallCount; // Count of extra balls added during gameplay
+    public int spawnerCount; // Number of spawners in the current level
+    public int rightHoleCount; // Count of balls that have sunk into the correct hole
+    public int wrongHoleCount; // Count of balls that have sunk into the wrong hole
+    public boolean ballCollisions; // Whether balls bounce off each other in the current level
+    public BallCollider collider; // Broad and narrow phase for ball to ball collisions
+    public ParallelBalls parallelBalls; // Updates the balls on several threads, or null to update them on the engine's thread
+
+    // Timer-related variables for handling game timing and spawning intervals
+    public int tickRate; // Number of simulation ticks per second
+    public int frameRate; // Number of rendered frames per second requested by the configuration
+    public float tickScale; // Fraction of a base tick covered by one simulation tick
+    private long tickNanos; // Length of one simulation tick (nanoseconds)
+    private long accumulator; // Real time not yet simulated (nanoseconds)
+    public int time; // Total time for the level
+    public int spawnInterval; // Time interval between ball spawns
+    public float elapsedTime; // Time elapsed during the game
+    public int frameCounter; // Frame counter for general timing
+    public float elapsedBallTime; // Time elapsed since last ball spawn
+    public int ballSpawnFrameCounter; // Frame counter for ball spawning
+    public boolean levelOver; // Indicates if the level is over
+    public int gameOverFrameCounter; // Frame counter for game-over animations
+    public boolean paused; // Game pause status
+    public int ballsToSpawn; // Number of balls that should have entered play by now
+    public int ballsLeft; // Number of balls still waiting to be spawned
+
+    // Score-related variables
+    public int currScore; // Current score of the player
+    private int prevScore; // Previous score (carried over between levels)
+    public int[] scoreInc; // Array storing score increments based on ball color
+    public int[] scoreDec; // Array storing score decrements based on ball color
+
+    // Variables for handling user-drawn lines
+    public ArrayList<Line> lines; // List of all drawn lines
+    public LineIndex lineIndex; // Spatial index over the segments of all drawn lines
+    public Line line; // Current line being drawn
+    public float prevX; // Previous X position of the mouse while drawing
+    public float prevY; // Previous Y position of the mouse while drawing
+
+    /**
+     * Constructor for the GameEngine object.
+     * Loads the configuration file and the first level, seeded from the
+     * configuration's "seed" if it has one and randomly otherwise.
+     *
+     * @param configPath The path of the JSON configuration file.
+    */
+    public GameEngine(String configPath) {
+        this(configPath, null);
+    }
+
+    /**
+     * Constructor for the GameEngine object with a given seed.
+     * Loads the configuration file and the first level.
+     *
+     * @param configPath The path of the JSON configuration file.
+     * @param seed The base seed of the run, or null to use the configuration's "seed" or a random one.
+    */
+    public GameEngine(String configPath, Long seed) {
+        this(PApplet.loadJSONObject(new File(configPath)), null, seed);
+    }
+
+    /**
+     * Constructor for the GameEngine object from an already loaded configuration.
+     * Engines running the same configuration can share one level cache so each level is only parsed once.
+     *
+     * @param config The loaded configuration.
+     * @param levels The level cache to share, or null to create one for this engine.
+     * @param seed The base seed of the run, or null to use the configuration's "seed" or a random one.
+    */
+    public GameEngine(JSONObject config, LevelCache levels, Long seed) {
+        levelToload = 1; // Level to start from
+        levelCount = 3; // Total number of levels
+
+        currScore = 0;
+        prevScore = 0;
+        scoreInc = new int[App.COLOURS.length];
+        scoreDec = new int[App.COLOURS.length];
+
+        events = new GameEvents(EVENT_CAPACITY);
+        this.config = config;
+        this.levels = (levels != null) ? levels : new LevelCache(config, levelCount);
+        if (seed != null) {
+            this.seed = seed;
+        }
+        else if (config.hasKey("seed")) {
+            this.seed = config.getLong("seed");
+        }
+        else {
+            this.seed = new Random().nextLong(); // Unseeded run, but still recorded so it can be replayed
+        }
+        tickRate = config.getInt("tick_rate", BASE_TICK_RATE);
+        frameRate = config.getInt("frame_rate", App.FPS);
+        tickScale = (float) BASE_TICK_RATE / tickRate;
+        tickNanos = 1000000000L / tickRate;
+        int ballThreads = config.getInt("ball_threads", 1);
+        if (ballThreads > 1) {
+            parallelBalls = new ParallelBalls(ballThreads);
+        }
+        accumulator = 0;
+        reset(); // Initialise timers and counters and load the first level
+    }
+
+    /**
+     * Load the level based on the provided level number.
+     *
+     * @param levelNum The level number to load.
+    */
+    public void loadLevel(int levelNum) {
+        extraBallCount = 0; // Reset extra ball count
+        spawnerCount = 0; // Reset spawner count
+
+        JfrEvents.LevelLoad event = new JfrEvents.LevelLoad();
+        event.begin();
+        long parseStart = System.nanoTime();
+
+        // Get the parsed and built level, and start on the next one while this one is played
+        LevelBoard built = levels.build(levelNum);
+        LevelData level = built.level;
+        levels.preload(levelNum + 1);
+        long buildStart = System.nanoTime();
+
+        // Seed the level so the same seed always plays out the same way, including after a reset
+        random = new GameRandom(level.hasSeed ? level.seed : levelSeed(seed, levelNum));
+
+        // Take over the board and everything compiled from it
+        board = built.board;
+        grid = built.grid;
+        holes = built.holes;
+        spawnerCount = built.spawnerCount;
+        spawnLoc = built.spawnLoc;
+        if (tileDirty == null || tileDirty.length != board.width * board.height) {
+            dirtyTiles = new int[board.width * board.height];
+            tileDirty = new boolean[board.width * board.height];
+            dirtyTileCount = 0;
+        }
+        boardVersion++; // The whole board has to be drawn again
+        clearDirtyTiles();
+
+        // Create balls to be spawned in and account for tile-specified balls
+        setBallCount = level.balls.length;
+        balls = new BallStore(built.presetCount + setBallCount); // Initialize ball store
+        balls.random = random;
+
+        // Spawn the balls placed on the board
+        for (int i = 0; i < built.ballCount; i++) {
+            int id = balls.add(built.ballColour[i]);
+            balls.activateNext();
+            balls.spawn(id, built.ballX[i], built.ballY[i]);
+            events.publish(GameEvents.SPAWN, tick, id, balls.colour[id], balls.x[id], balls.y[id], 0);
+            extraBallCount++;
+        }
+
+        // Queue the balls from the configuration, after the pre-set balls
+        for (char ballType : level.balls) {
+            balls.add(ballType);
+        }
+
+        // Set the timers and score values for the level
+        time = level.time;
+        spawnInterval = level.spawnInterval;
+        ballCollisions = level.ballCollisions;
+        collider = new BallCollider();
+        elapsedTime = 0;
+        System.arraycopy(level.scoreInc, 0, scoreInc, 0, scoreInc.length);
+        System.arraycopy(level.scoreDec, 0, scoreDec, 0, scoreDec.length);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.level = levelNum;
+            event.parseTime = buildStart - parseStart;
+            event.buildTime = System.nanoTime() - buildStart;
+            event.commit();
+        }
+    }
+
+    /**
+     * Change the type of a tile during a level, recompile its collision data and remember that it has to be drawn again.
+     * @param x The x index of the tile.
+     * @param y The y index of the tile.
+     * @param type The new type of the tile.
+    */
+    public void setTile(int x, int y, char type) {
+        board.set(x, y, type);
+        grid.update(board, x, y);
+        holes.update(grid, x, y);
+        int index = y * board.width + x;
+        if (!tileDirty[index]) {
+            tileDirty[index] = true;
+            dirtyTiles[dirtyTileCount++] = index;
+        }
+    }
+
+    /**
+     * Forget the tiles changed so far, once the renderer has drawn them.
+    */
+    public void clearDirtyTiles() {
+        for (int i = 0; i < dirtyTileCount; i++) {
+            tileDirty[dirtyTiles[i]] = false;
+        }
+        dirtyTileCount = 0;
+    }
+
+    /**
+     * Advance the simulation by an amount of real time using a fixed timestep.
+     * Runs as many whole ticks as fit into the accumulated time and keeps the
+     * remainder for the next call, so slow frames do not slow the game down.
+     *
+     * @param seconds The real time that has passed since the last call.
+     * @return The number of ticks that were run.
+    */
+    public int advance(double seconds) {
+        accumulator += (long) (Math.min(seconds, MAX_FRAME_TIME) * 1e9);
+        int steps = 0;
+        while (accumulator >= tickNanos) {
+            step();
+            accumulator -= tickNanos;
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * How far the accumulated time is between the last tick and the next one.
+     * @return A value from 0 (at the last tick) up to 1 (at the next tick).
+    */
+    public float interpolation() {
+        return (float) accumulator / tickNanos;
+    }
+
+    /**
+     * Advance the simulation by one tick.
+     * Updates timers, moves every active ball and handles the end of the level.
+    */
+    public void step() {
+        JfrEvents.Tick event = new JfrEvents.Tick();
+        event.begin();
+        tick++;
+
+        // Advance the clock
+        if (!paused && !levelOver) {
+            frameCounter++;
+        }
+        elapsedTime = (float) frameCounter / tickRate;
+        elapsedBallTime = (float) ballSpawnFrameCounter / tickRate;
+
+        // Pause the game once the time runs out
+        if (time != -1 && time - elapsedTime <= 0 && !levelOver) {
+            paused = true;
+        }
+
+        // Updating active balls
+        ballsToSpawn = (int) elapsedBallTime / spawnInterval + extraBallCount;
+        if (parallelBalls != null) {
+            parallelBalls.updateActive(this, ballsToSpawn - rightHoleCount - wrongHoleCount);
+        }
+        else {
+            balls.updateActive(this, ballsToSpawn - rightHoleCount - wrongHoleCount);
+        }
+        if (ballCollisions && !paused) {
+            collider.resolve(balls);
+        }
+
+        // Increase time until next ball if any remain
+        ballsLeft = balls.queueCount;
+        if (ballsLeft > 0 && !paused) {
+            ballSpawnFrameCounter++;
+        }
+
+        // Check if level is over
+        boolean wasOver = levelOver;
+        levelOver = balls.sunkCount == balls.count;
+        if (levelOver && !wasOver) {
+            events.publish(GameEvents.LEVEL_END, tick, -1, ' ', 0, 0, currScore);
+        }
+
+        // If level over
+        updateLevelOver();
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.tick = tick;
+            event.level = levelToload;
+            event.activeBalls = balls.activeCount;
+            event.segments = lineIndex.segmentCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Handles the end of a level: converts remaining time into score and
+     * moves on to the next level once the time has been used up.
+    */
+    public void updateLevelOver() {
+        if (levelOver) {
+            paused = false;
+            // Every 0.067 seconds will increase score
+            int tallyInterval = Math.max(1, Math.round(2 / tickScale));
+            if (gameOverFrameCounter % tallyInterval == 0 && (time != -1 && time - elapsedTime > 0)) {
+                currScore += 1;
+                frameCounter += tickRate;
+            }
+
+            // Move on to the next level once the time has been converted
+            if (time - elapsedTime <= 0 && levelToload != levelCount) {
+                prevScore = currScore;
+                levelToload++;
+                reset();
+                return;
+            }
+            gameOverFrameCounter++;
+        }
+    }
+
+    /**
+     * Whether the final level is over and all its time has been converted into score.
+     * @return true if the game has ended.
+    */
+    public boolean isGameEnded() {
+        return levelOver && time - elapsedTime <= 0 && levelToload == levelCount;
+    }
+
+    /**
+     * Toggle the pause state of the game.
+    */
+    public void togglePause() {
+        record(ReplayLog.TOGGLE_PAUSE, 0, 0);
+        paused = !paused;
+    }
+
+    /**
+     * Restart the current level, as when the player presses R.
+    */
+    public void restartLevel() {
+        record(ReplayLog.RESTART_LEVEL, 0, 0);
+        reset();
+    }
+
+    /**
+     * Restart the game from the first level with no score.
+    */
+    public void restartGame() {
+        record(ReplayLog.RESTART_GAME, 0, 0);
+        levelToload = 1;
+        prevScore = 0;
+        reset();
+    }
+
+    /**
+     * Stop the threads the engine started: the event delivery thread and the
+     * ball update threads. Tools that create many engines call this when they
+     * are done with each one. The engine can still be stepped afterwards, on
+     * its own thread.
+    */
+    public void close() {
+        events.close();
+        if (parallelBalls != null) {
+            parallelBalls.close();
+            parallelBalls = null;
+        }
+    }
+
+    /**
+     * Remove the first line that has a segment near the given position.
+     * @param x The x-coordinate of the eraser.
+     * @param y The y-coordinate of the eraser.
+    */
+    public void eraseLine(float x, float y) {
+        record(ReplayLog.ERASE_LINE, x, y);
+        if (!paused && !levelOver) {
+            Line close = lineIndex.query(x, y, 5);
+            if (close != null) {
+                removeLine(close);
+            }
+        }
+    }
+
+    /**
+     * Start drawing a new line at the given position.
+     * @param x The x-coordinate of the line start.
+     * @param y The y-coordinate of the line start.
+    */
+    public void startLine(float x, float y) {
+        record(ReplayLog.START_LINE, x, y);
+        if (!paused && !levelOver) {
+            prevX = x;
+            prevY = y;
+            line = new Line();
+            addLine(line);
+        }
+    }
+
+    /**
+     * Extend the line currently being drawn to the given position.
+     * @param x The x-coordinate of the new line end.
+     * @param y The y-coordinate of the new line end.
+    */
+    public void extendLine(float x, float y) {
+        record(ReplayLog.EXTEND_LINE, x, y);
+        if (!paused && !levelOver && line != null) {
+            line.addSegment(prevX, prevY, x, y);
+            prevX = x;
+            prevY = y;
+        }
+    }
+
+    /**
+     * Finish the line currently being drawn.
+    */
+    public void endLine() {
+        record(ReplayLog.END_LINE, 0, 0);
+        line = null; // for checking its been set
+    }
+
+    /**
+     * Record a player input event if a replay is being recorded.
+     * @param type The event type, one of the constants of {@link ReplayLog}.
+     * @param x The x-coordinate of the mouse, for mouse events.
+     * @param y The y-coordinate of the mouse, for mouse events.
+    */
+    private void record(int type, float x, float y) {
+        if (recorder != null) {
+            recorder.record(tick, type, x, y);
+        }
+    }
+
+    /**
+     * Work out the seed of a level that has none of its own, so each level of a run gets different numbers.
+     * @param seed The base seed of the run.
+     * @param levelNum The level number.
+     * @return The level's seed.
+    */
+    public static long levelSeed(long seed, int levelNum) {
+        return seed ^ (levelNum * 0x9E3779B97F4A7C15L); // Spread neighbouring level numbers far apart
+    }
+
+    /**
+     * Add a line to the board so balls can bounce off it.
+     * @param l The line to add.
+    */
+    public void addLine(Line l) {
+        lines.add(l);
+        lineIndex.add(l);
+    }
+
+    /**
+     * Remove a line from the board.
+     * @param l The line to remove.
+    */
+    public void removeLine(Line l) {
+        lines.remove(l);
+        lineIndex.remove(l);
+    }
+
+    /**
+     * Reset the game state to prepare for the next level or a replay.
+    */
+    public void reset() {
+        // Reset timers
+        accumulator = 0;
+        frameCounter = 0;
+        ballSpawnFrameCounter = 0;
+        elapsedBallTime = 0;
+        gameOverFrameCounter = 0;
+
+        // Reset balls
+        ballsToSpawn = 0;
+        ballsLeft = 0;
+        rightHoleCount = 0;
+        wrongHoleCount = 0;
+
+        // Reset game status
+        paused = false;
+        levelOver = false;
+
+        // Reset score
+        currScore = prevScore;
+
+        // Reset lines
+        lines = new ArrayList<Line>();
+        line = null;
+
+        // Reload the specified level layout and reset the score
+        loadLevel(levelToload);
+        lineIndex = new LineIndex(board.width, board.height + App.TOPBAR / App.CELLSIZE); // Covers the level's board and the top bar
+    }
+
+    /**
+     * Write the state of the level in progress to a snapshot.
+     * @param out The snapshot being saved.
+     * @throws IOException If the snapshot can't be written.
+    */
+    void writeState(Snapshot out) throws IOException {
+        // Run, timers and score
+        out.putInt(tickRate);
+        out.putInt(levelToload);
+        out.putLong(seed);
+        out.putLong(tick);
+        out.putLong(random.getState());
+        out.putLong(accumulator);
+        out.putInt(frameCounter);
+        out.putInt(ballSpawnFrameCounter);
+        out.putInt(gameOverFrameCounter);
+        out.putFloat(elapsedTime);
+        out.putFloat(elapsedBallTime);
+        out.putByte((paused ? 1 : 0) | (levelOver ? 2 : 0) | (ballCollisions ? 4 : 0));
+        out.putInt(ballsToSpawn);
+        out.putInt(ballsLeft);
+        out.putInt(currScore);
+        out.putInt(prevScore);
+        out.putInt(rightHoleCount);
+        out.putInt(wrongHoleCount);
+        out.putInt(extraBallCount);
+        out.putInt(setBallCount);
+        out.putInt(time);
+        out.putInt(spawnInterval);
+        out.putInt(scoreInc.length);
+        for (int i = 0; i < scoreInc.length; i++) {
+            out.putInt(scoreInc[i]);
+            out.putInt(scoreDec[i]);
+        }
+
+        // Board and balls
+        board.write(out);
+        out.putInt(spawnerCount);
+        for (int i = 0; i < spawnerCount; i++) {
+            out.putInt(spawnLoc[i][0]);
+            out.putInt(spawnLoc[i][1]);
+        }
+        balls.write(out);
+
+        // Lines, in draw order
+        out.putInt(lines.size());
+        out.putInt(lines.indexOf(line));
+        out.putInt(lineIndex.nextOrder);
+        out.putFloat(prevX);
+        out.putFloat(prevY);
+        for (int i = 0; i < lines.size(); i++) {
+            Line l = lines.get(i);
+            out.putInt(l.order);
+            l.write(out, l == line);
+        }
+    }
+
+    /**
+     * Replace the state of the level in progress with one read from a snapshot.
+     * The collision grid, hole field and line index are built again from what is read.
+     * Everything is read into new objects first, so if the snapshot is damaged
+     * part way through the game in progress is left as it was.
+     * @param in The snapshot being loaded.
+     * @throws IOException If the snapshot can't be read, is damaged or was saved at another tick rate.
+    */
+    void readState(Snapshot in) throws IOException {
+        int savedTickRate = in.getInt();
+        if (savedTickRate != tickRate) {
+            throw new IOException("Snapshot was saved at " + savedTickRate + " ticks per second, config runs at " + tickRate);
+        }
+        int level = in.getInt();
+        if (level < 1 || level > levelCount) {
+            throw new IOException("Malformed snapshot");
+        }
+
+        // Run, timers and score
+        long newSeed = in.getLong();
+        long newTick = in.getLong();
+        GameRandom newRandom = new GameRandom(0);
+        newRandom.setState(in.getLong());
+        long newAccumulator = in.getLong();
+        int newFrameCounter = in.getInt();
+        int newBallSpawnFrameCounter = in.getInt();
+        int newGameOverFrameCounter = in.getInt();
+        float newElapsedTime = in.getFloat();
+        float newElapsedBallTime = in.getFloat();
+        int flags = in.getByte();
+        int newBallsToSpawn = in.getInt();
+        int newBallsLeft = in.getInt();
+        int newCurrScore = in.getInt();
+        int newPrevScore = in.getInt();
+        int newRightHoleCount = in.getInt();
+        int newWrongHoleCount = in.getInt();
+        int newExtraBallCount = in.getInt();
+        int newSetBallCount = in.getInt();
+        int newTime = in.getInt();
+        int newSpawnInterval = in.getInt();
+        int[] newScoreInc = scoreInc.clone(); // Colours the snapshot doesn't have keep their scores
+        int[] newScoreDec = scoreDec.clone();
+        int colours = in.getCount(scoreInc.length);
+        for (int i = 0; i < colours; i++) {
+            newScoreInc[i] = in.getInt();
+            newScoreDec[i] = in.getInt();
+        }
+
+        // Board and balls, with everything built from the board
+        TileMap newBoard = TileMap.read(in);
+        int newSpawnerCount = in.getCount(newBoard.width * newBoard.height);
+        int[][] newSpawnLoc = new int[newSpawnerCount][2];
+        for (int i = 0; i < newSpawnerCount; i++) {
+            newSpawnLoc[i][0] = in.getInt();
+            newSpawnLoc[i][1] = in.getInt();
+            if (newSpawnLoc[i][0] < 0 || newSpawnLoc[i][0] >= newBoard.width || newSpawnLoc[i][1] < 0 || newSpawnLoc[i][1] >= newBoard.height) {
+                throw new IOException("Malformed snapshot");
+            }
+        }
+        BallStore newBalls = BallStore.read(in, scoreInc.length);
+        newBalls.random = newRandom;
+
+        // Lines, indexed with the draw order they had
+        int lineCount = in.getCount(1 << 24);
+        int drawing = in.getInt();
+        ArrayList<Line> newLines = new ArrayList<Line>(lineCount);
+        LineIndex newLineIndex = new LineIndex(newBoard.width, newBoard.height + App.TOPBAR / App.CELLSIZE);
+        int nextOrder = in.getInt();
+        float newPrevX = in.getFloat();
+        float newPrevY = in.getFloat();
+        Line newLine = null;
+        for (int i = 0; i < lineCount; i++) {
+            int order = in.getInt();
+            Line l = Line.read(in, i == drawing);
+            newLines.add(l);
+            newLineIndex.add(l);
+            l.order = order;
+            if (i == drawing) {
+                newLine = l;
+            }
+        }
+        newLineIndex.nextOrder = nextOrder;
+
+        // The whole snapshot has been read, so the game in progress can be replaced
+        levelToload = level;
+        seed = newSeed;
+        tick = newTick;
+        random = newRandom;
+        accumulator = newAccumulator;
+        frameCounter = newFrameCounter;
+        ballSpawnFrameCounter = newBallSpawnFrameCounter;
+        gameOverFrameCounter = newGameOverFrameCounter;
+        elapsedTime = newElapsedTime;
+        elapsedBallTime = newElapsedBallTime;
+        paused = (flags & 1) != 0;
+        levelOver = (flags & 2) != 0;
+        ballCollisions = (flags & 4) != 0;
+        ballsToSpawn = newBallsToSpawn;
+        ballsLeft = newBallsLeft;
+        currScore = newCurrScore;
+        prevScore = newPrevScore;
+        rightHoleCount = newRightHoleCount;
+        wrongHoleCount = newWrongHoleCount;
+        extraBallCount = newExtraBallCount;
+        setBallCount = newSetBallCount;
+        time = newTime;
+        spawnInterval = newSpawnInterval;
+        scoreInc = newScoreInc;
+        scoreDec = newScoreDec;
+
+        board = newBoard;
+        spawnerCount = newSpawnerCount;
+        spawnLoc = newSpawnLoc;
+        balls = newBalls;
+        grid = new CollisionGrid(board);
+        holes = new HoleField(grid);
+        collider = new BallCollider();
+        if (tileDirty == null || tileDirty.length != board.width * board.height) {
+            dirtyTiles = new int[board.width * board.height];
+            tileDirty = new boolean[board.width * board.height];
+            dirtyTileCount = 0;
+        }
+        clearDirtyTiles();
+        boardVersion++; // The whole board has to be drawn again
+
+        lines = newLines;
+        lineIndex = newLineIndex;
+        line = newLine;
+        prevX = newPrevX;
+        prevY = newPrevY;
+    }
+}
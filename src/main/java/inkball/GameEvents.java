@@ -0,0 +1,210 @@
+package inkball;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bus of typed game events, such as captures and spawns, handed from the
+ * simulation to listeners on a background thread.
+ *
+ * Events are written into a bounded ring buffer of parallel primitive
+ * arrays. The engine's thread is the only producer and the drain thread the
+ * only consumer, so the two only share a pair of sequence numbers and no
+ * locks are needed. Publishing never blocks or creates objects: when the
+ * buffer is full the event is dropped and counted. Until a listener is added
+ * publishing does nothing at all, and no thread is started.
+ *
+ * Responsibilities of the GameEvents class include:
+ * - Buffering events from the simulation without blocking it.
+ * - Delivering every buffered event, in order, to each listener on a background thread.
+ * - Printing capture messages to the console.
+*/
+public class GameEvents {
+    // Event types
+    public static final int CAPTURE = 0; // A ball sank into the right hole (value: score change)
+    public static final int WRONG_HOLE = 1; // A ball sank into the wrong hole and was queued again (value: score change)
+    public static final int SPAWN = 2; // A ball entered play
+    public static final int LINE_BOUNCE = 3; // A ball bounced off a line, which was removed (value: draw order of the line)
+    public static final int LEVEL_END = 4; // Every ball of the level has sunk (value: score)
+    public static final String[] TYPE_NAMES = {"capture", "wrong hole", "spawn", "line bounce", "level end"};
+
+    private static final long IDLE_NANOS = 1_000_000; // How long the drain thread sleeps when there is nothing to deliver
+
+    /**
+     * Receives events on the drain thread.
+    */
+    public interface Listener {
+        /**
+         * Handle one event.
+         * @param type The event type, one of the constants of {@link GameEvents}.
+         * @param tick The engine tick the event happened on.
+         * @param ball The slot of the ball involved.
+         * @param colour The colour of the ball as a digit character.
+         * @param x The x position of the event in cells.
+         * @param y The y position of the event in cells.
+         * @param value A value depending on the type, see the type constants.
+        */
+        void event(int type, long tick, int ball, char colour, float x, float y, int value);
+    }
+
+    // Ring buffer, one entry per event at sequence & mask
+    private final int mask; // Capacity minus one (the capacity is a power of two)
+    private final byte[] types;
+    private final long[] ticks;
+    private final int[] balls;
+    private final char[] colours;
+    private final float[] xs;
+    private final float[] ys;
+    private final int[] values;
+
+    private long writeSequence; // Sequence of the next event to write, only used by the producer
+    private volatile long published; // Events written so far, read by the drain thread
+    private volatile long consumed; // Events delivered so far, read by the producer to find free space
+    public long dropped; // Events dropped because the buffer was full (producer side)
+
+    private volatile Listener[] listeners = new Listener[0]; // Listeners, replaced as a whole when one is added
+    private volatile Thread drainThread; // Background thread delivering events, started with the first listener
+    private volatile boolean closed; // Whether the drain thread should stop once the buffer is empty
+
+    /**
+     * Constructor for the GameEvents object.
+     * @param capacity The number of events the buffer holds, rounded up to a power of two.
+    */
+    public GameEvents(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        types = new byte[size];
+        ticks = new long[size];
+        balls = new int[size];
+        colours = new char[size];
+        xs = new float[size];
+        ys = new float[size];
+        values = new int[size];
+    }
+
+    /**
+     * Add a listener, starting the drain thread if it is the first.
+     * @param listener The listener to add.
+    */
+    public synchronized void addListener(Listener listener) {
+        Listener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[grown.length - 1] = listener;
+        listeners = grown;
+        if (drainThread == null) {
+            closed = false;
+            drainThread = new Thread(this::drainLoop, "inkball-events");
+            drainThread.setDaemon(true);
+            drainThread.start();
+        }
+    }
+
+    /**
+     * Publish an event from the engine's thread. Never blocks; drops the event if the buffer is full.
+     * @param type The event type, one of the constants of this class.
+     * @param tick The engine tick the event happened on.
+     * @param ball The slot of the ball involved.
+     * @param colour The colour of the ball as a digit character.
+     * @param x The x position of the event in cells.
+     * @param y The y position of the event in cells.
+     * @param value A value depending on the type.
+    */
+    public void publish(int type, long tick, int ball, char colour, float x, float y, int value) {
+        if (drainThread == null) {
+            return; // Nobody is listening
+        }
+        long sequence = writeSequence;
+        if (sequence - consumed > mask) {
+            dropped++;
+            return;
+        }
+        int slot = (int) (sequence & mask);
+        types[slot] = (byte) type;
+        ticks[slot] = tick;
+        balls[slot] = ball;
+        colours[slot] = colour;
+        xs[slot] = x;
+        ys[slot] = y;
+        values[slot] = value;
+        writeSequence = sequence + 1;
+        published = sequence + 1; // Makes the entry visible to the drain thread
+    }
+
+    /**
+     * Stop the drain thread after it has delivered every event already published.
+    */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            thread = drainThread;
+            closed = true;
+        }
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            drainThread = null; // Later events are ignored until a listener is added again
+        }
+    }
+
+    /**
+     * Body of the drain thread: deliver events as they are published, sleeping briefly when there are none.
+    */
+    private void drainLoop() {
+        while (true) {
+            boolean stopping = closed; // Read before draining so nothing published before close is missed
+            if (drain() == 0) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Deliver every published event that hasn't been delivered yet.
+     * @return The number of events delivered.
+    */
+    private int drain() {
+        long end = published;
+        long sequence = consumed;
+        Listener[] current = listeners;
+        int delivered = 0;
+        while (sequence < end) {
+            int slot = (int) (sequence & mask);
+            for (Listener listener : current) {
+                try {
+                    listener.event(types[slot], ticks[slot], balls[slot], colours[slot], xs[slot], ys[slot], values[slot]);
+                } catch (RuntimeException e) {
+                    System.out.println("Error in game event listener");
+                    e.printStackTrace();
+                }
+            }
+            sequence++;
+            consumed = sequence; // Frees the entry for the producer
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * A listener printing captures to the console, as the game always has.
+    */
+    public static class ConsoleLog implements Listener {
+        @Override
+        public void event(int type, long tick, int ball, char colour, float x, float y, int value) {
+            if (type == CAPTURE) {
+                System.out.println("score up");
+            }
+            else if (type == WRONG_HOLE) {
+                System.out.println("score down");
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package inkball;
+
+import java.util.Random;
+
+/**
+ * Random numbers whose state can be saved and restored.
+ *
+ * java.util.Random keeps its state to itself, so this class runs the same
+ * 48-bit linear congruential generator with the state in a field of its
+ * own. It gives exactly the numbers a Random with the same seed gives, so
+ * seeded games play out as they always have, and a game saved in a
+ * {@link Snapshot} carries on with the same numbers it would have drawn.
+ * Only the generator state is saved, not the spare value nextGaussian keeps,
+ * which the game never uses.
+ *
+ * Responsibilities of the GameRandom class include:
+ * - Generating the same sequence as java.util.Random.
+ * - Giving and setting the generator state.
+*/
+public class GameRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state; // Current 48 bits of generator state
+
+    /**
+     * Constructor for the GameRandom object.
+     * @param seed The seed, as for java.util.Random.
+    */
+    public GameRandom(long seed) {
+        super(seed); // Calls setSeed below
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed); // Clears the spare Gaussian
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * Get the generator state.
+     * @return The 48 bits of state.
+    */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Set the generator state, as given by {@link #getState()}.
+     * @param state The 48 bits of state.
+    */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
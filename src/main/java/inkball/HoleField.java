@@ -0,0 +1,112 @@
+package inkball;
+
+import java.util.Arrays;
+
+/**
+ * A per-level map from board cells to the hole that pulls on balls there.
+ *
+ * Built when the level is loaded from the hole cells of the
+ * {@link CollisionGrid}. Each cell gives the index of the hole in range of a
+ * ball in that cell, or -1, and each hole has its centre and colour, so a
+ * hole check is one lookup and a squared distance with no search. A square
+ * root is only taken while a ball is shrinking into a hole. The cost per ball
+ * doesn't depend on how many holes a level has.
+ *
+ * Responsibilities of the HoleField class include:
+ * - Listing the holes of a level with their centres and colours.
+ * - Mapping every cell to the hole in range of it.
+ * - Updating the map when tiles change during a level.
+*/
+public class HoleField {
+    // Squared distances from a hole's centre (in cells) that decide what happens to a ball
+    public static final double CAPTURE_DISTANCE_SQ = (double) 0.3f * 0.3f; // Close enough to sink
+    public static final double ATTRACT_DISTANCE_SQ = 1; // Close enough to be pulled in and shrink
+    public static final double STRONG_ATTRACT_DISTANCE_SQ = (double) 0.6f * 0.6f; // Close enough to be pulled in harder
+
+    public final int width; // Number of cells across
+    public final int height; // Number of cells down
+    public final int[] cellHole; // Index of the hole in range of each cell at y * width + x, or -1
+
+    public int holeCount; // Number of holes listed
+    public int[] centreX = new int[4]; // X position of the centre of each hole, in cells
+    public int[] centreY = new int[4]; // Y position of the centre of each hole, in cells
+    public char[] colour = new char[4]; // Colour of each hole as a digit, or ' ' if unknown
+    private final int[] anchorHole; // Index of the hole whose top left cell is each cell, or -1
+
+    /**
+     * Constructor for the HoleField object, mapping every cell of a compiled board.
+     * @param grid The compiled collision grid of the level.
+    */
+    public HoleField(CollisionGrid grid) {
+        width = grid.width;
+        height = grid.height;
+        cellHole = new int[width * height];
+        anchorHole = new int[width * height];
+        Arrays.fill(anchorHole, -1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                cellHole[y * width + x] = map(grid, x, y);
+            }
+        }
+    }
+
+    /**
+     * Map the cells again after the collision grid has been updated around a changed tile.
+     * @param grid The compiled collision grid of the level.
+     * @param tileX The x index of the changed tile.
+     * @param tileY The y index of the changed tile.
+    */
+    public void update(CollisionGrid grid, int tileX, int tileY) {
+        for (int y = Math.max(0, tileY - 1); y <= Math.min(height - 1, tileY + 1); y++) {
+            for (int x = Math.max(0, tileX - 1); x <= Math.min(width - 1, tileX + 1); x++) {
+                cellHole[y * width + x] = map(grid, x, y);
+            }
+        }
+    }
+
+    /**
+     * Get the hole in range of a ball in a cell.
+     * @param x The x index of the cell.
+     * @param y The y index of the cell.
+     * @return The index of the hole, or -1 if none is in range.
+    */
+    public int holeAt(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return -1;
+        }
+        return cellHole[y * width + x];
+    }
+
+    /**
+     * Find the hole a cell belongs to, listing the hole if it is new.
+     * @param grid The compiled collision grid of the level.
+     * @param x The x index of the cell.
+     * @param y The y index of the cell.
+     * @return The index of the hole, or -1 if the cell isn't part of a hole.
+    */
+    private int map(CollisionGrid grid, int x, int y) {
+        int cell = grid.get(x, y);
+        if ((cell & CollisionGrid.HOLE) == 0) {
+            return -1;
+        }
+        int anchorX = x - ((cell & CollisionGrid.HOLE_LEFT) != 0 ? 1 : 0);
+        int anchorY = y - ((cell & CollisionGrid.HOLE_UP) != 0 ? 1 : 0);
+        int anchor = anchorY * width + anchorX;
+        char holeColour = CollisionGrid.colour(cell);
+
+        int hole = anchorHole[anchor];
+        if (hole == -1) { // First cell seen of this hole
+            if (holeCount == centreX.length) {
+                centreX = Arrays.copyOf(centreX, holeCount * 2);
+                centreY = Arrays.copyOf(centreY, holeCount * 2);
+                colour = Arrays.copyOf(colour, holeCount * 2);
+            }
+            hole = holeCount++;
+            centreX[hole] = anchorX + 1;
+            centreY[hole] = anchorY + 1;
+            anchorHole[anchor] = hole;
+        }
+        colour[hole] = holeColour; // The colour tile may have changed since the hole was listed
+        return hole;
+    }
+}
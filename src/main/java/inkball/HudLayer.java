@@ -0,0 +1,169 @@
+package inkball;
+
+import processing.core.PGraphics;
+
+/**
+ * An offscreen image of the text in the top bar: the score, the time left,
+ * the pause, time's up and end messages, and the countdown to the next ball.
+ *
+ * The text only changes when one of the numbers it shows does, which is at
+ * most ten times a second for the countdown, so it is drawn into this layer
+ * when something changes and the layer is drawn to the screen with a single
+ * image call every frame. The widths of the constant labels are measured
+ * once, and numbers are written into a reused character buffer instead of
+ * being formatted into new strings.
+ *
+ * Responsibilities of the HudLayer class include:
+ * - Working out whether the text shown in the top bar has changed.
+ * - Drawing the top bar text into the layer when it has.
+ * - Drawing the cached text to the screen.
+*/
+public class HudLayer {
+    public static final int TEXT_HORI_GAP = 60; // Gap between the right edge and the score and time values
+    public static final int TEXT_VERT_GAP = 25; // Baseline of the score, the time sits half a gap and a line lower
+
+    // Constant labels
+    private static final String SCORE = "Score: ";
+    private static final String TIME = "Time: ";
+    private static final String PAUSED = "*** PAUSED ***";
+    private static final String TIME_UP = "=== TIME'S UP ===";
+    private static final String ENDED = "=== ENDED ===";
+
+    private PGraphics graphics; // Offscreen image of the top bar, transparent around the text
+    private boolean measured; // Whether the label widths below have been measured
+    private float scoreWidth; // Width of the score label
+    private float timeWidth; // Width of the time label
+    private float pausedWidth; // Width of the pause message
+    private float timeUpWidth; // Width of the time's up message
+    private float endedWidth; // Width of the end message
+
+    // What the layer was last drawn with
+    private boolean drawn; // Whether the layer has been drawn at all
+    private int score; // Score shown
+    private int secondsLeft; // Whole seconds left shown, 0 when the level has no time limit
+    private int tenthsToBall; // Tenths of a second to the next ball shown, -1 when there is no countdown
+    private int countdownX; // Left edge of the countdown
+    private boolean paused; // Whether the game was paused
+    private boolean timeUp; // Whether time had run out
+    private boolean ended; // Whether the game had ended
+
+    private final TextBuffer text = new TextBuffer(16); // Reused buffer for numbers
+
+    /**
+     * Bring the layer up to date with the engine and draw it to the screen.
+     * @param app The main App object.
+     * @param countdownX The left edge of the countdown to the next ball, beside the upcoming balls.
+    */
+    public void draw(App app, int countdownX) {
+        GameEngine engine = app.engine;
+        if (graphics == null) {
+            graphics = app.createGraphics(App.WIDTH, App.TOPBAR);
+        }
+
+        int newSecondsLeft = (engine.time != -1) ? (int) (engine.time - engine.elapsedTime) : 0;
+        boolean newTimeUp = engine.time != -1 && engine.time - engine.elapsedTime <= 0 && !engine.levelOver;
+        boolean newEnded = engine.isGameEnded();
+        int newTenths = -1;
+        if (engine.ballsLeft != 0) {
+            float toBall = engine.spawnInterval - (engine.elapsedBallTime % engine.spawnInterval);
+            newTenths = (int) Math.floor(toBall * 10.0 + 0.5); // Rounded half up, as "%.1f" does
+        }
+
+        if (!drawn || newSecondsLeft != secondsLeft || newTenths != tenthsToBall || engine.currScore != score
+            || engine.paused != paused || newTimeUp != timeUp || newEnded != ended || countdownX != this.countdownX) {
+            drawn = true;
+            score = engine.currScore;
+            secondsLeft = newSecondsLeft;
+            tenthsToBall = newTenths;
+            this.countdownX = countdownX;
+            paused = engine.paused;
+            timeUp = newTimeUp;
+            ended = newEnded;
+            redraw(app);
+        }
+
+        app.image(graphics, 0, 0);
+    }
+
+    /**
+     * Draw the top bar text into the layer.
+     * @param app The main App object.
+    */
+    private void redraw(App app) {
+        GameEngine engine = app.engine;
+        graphics.beginDraw();
+        graphics.clear();
+        graphics.textSize(App.TEXT_SIZE);
+        graphics.fill(0);
+
+        // Score
+        measure(graphics);
+        graphics.text(SCORE, App.WIDTH - (TEXT_HORI_GAP + scoreWidth), TEXT_VERT_GAP);
+        text.clear().append(score);
+        graphics.text(text.chars, 0, text.length, App.WIDTH - TEXT_HORI_GAP, TEXT_VERT_GAP);
+
+        // Time and messages
+        drawTime(graphics, engine.time, engine.elapsedTime, engine.levelOver, paused, TEXT_HORI_GAP, TEXT_VERT_GAP);
+        if (ended) {
+            graphics.text(ENDED, centred(endedWidth), (int) (App.TOPBAR*0.5 + App.TEXT_SIZE*0.5));
+        }
+
+        // Countdown to the next ball
+        if (tenthsToBall != -1) {
+            text.clear().append(tenthsToBall / 10).append('.').append(tenthsToBall % 10);
+            graphics.text(text.chars, 0, text.length, countdownX, (int) (App.TOPBAR*0.5 + App.TEXT_SIZE*0.5));
+        }
+        graphics.endDraw();
+    }
+
+    /**
+     * Draw the time left and the pause or time's up message.
+     * @param g Where to draw, with the text size and fill already set.
+     * @param time The time limit of the level in seconds, or -1 for no limit.
+     * @param elapsedTime The time that has passed since the start of the level.
+     * @param levelOver Whether the level is over.
+     * @param paused Whether the game is paused.
+     * @param textHoriGap The gap between the right edge and the time value.
+     * @param textVertGap The vertical gap used for positioning the time.
+    */
+    public void drawTime(PGraphics g, int time, float elapsedTime, boolean levelOver, boolean paused, int textHoriGap, int textVertGap) {
+        measure(g);
+        int messageY = (int) (App.TOPBAR*0.5 + App.TEXT_SIZE*0.5);
+        // If time is set (not infinite)
+        if (time != -1) {
+            // If time up
+            if (time - elapsedTime <= 0 && !levelOver) {
+                g.text(TIME_UP, centred(timeUpWidth), messageY);
+            }
+            // If paused
+            else if (paused) {
+                g.text(PAUSED, centred(pausedWidth), messageY);
+            }
+            g.text(TIME, App.WIDTH - (textHoriGap + timeWidth), (int) (textVertGap*1.5) + App.TEXT_SIZE);
+            text.clear().append((int) (time - elapsedTime));
+            g.text(text.chars, 0, text.length, App.WIDTH - textHoriGap, (int) (textVertGap*1.5) + App.TEXT_SIZE);
+        }
+        // If infinite time can still pause
+        else if (paused) {
+            g.text(PAUSED, centred(pausedWidth), messageY);
+        }
+    }
+
+    // Measure the constant labels the first time text is drawn
+    private void measure(PGraphics g) {
+        if (measured) {
+            return;
+        }
+        measured = true;
+        scoreWidth = g.textWidth(SCORE);
+        timeWidth = g.textWidth(TIME);
+        pausedWidth = g.textWidth(PAUSED);
+        timeUpWidth = g.textWidth(TIME_UP);
+        endedWidth = g.textWidth(ENDED);
+    }
+
+    // Left edge of a centred message, with the same offset the messages have always had
+    private static int centred(float width) {
+        return (int) ((App.WIDTH*0.5) - (width*0.5) + App.TEXT_SIZE);
+    }
+}
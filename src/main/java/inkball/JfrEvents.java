@@ -0,0 +1,130 @@
+package inkball;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the game, so recordings show what the game
+ * was doing next to GC, allocation and CPU data.
+ *
+ * Events follow the usual JFR pattern: create, begin, and only fill in the
+ * fields and commit if {@code shouldCommit()} is true. When no recording is
+ * running, or the event is disabled in the recording settings, that check
+ * fails straight away and the JIT removes the unused event object, so the
+ * events cost nothing.
+ *
+ * Responsibilities of the JfrEvents class include:
+ * - Defining the tick, frame, capture, line bounce and level load events.
+*/
+public final class JfrEvents {
+    private JfrEvents() {
+    }
+
+    @Name("inkball.Tick")
+    @Label("Tick")
+    @Category("Inkball")
+    @Description("One fixed-timestep tick of the simulation")
+    @StackTrace(false)
+    public static class Tick extends Event {
+        @Label("Tick Number")
+        public long tick;
+
+        @Label("Level")
+        public int level;
+
+        @Label("Active Balls")
+        public int activeBalls;
+
+        @Label("Line Segments")
+        public int segments;
+    }
+
+    @Name("inkball.Frame")
+    @Label("Frame")
+    @Category("Inkball")
+    @Description("One rendered frame, including the ticks it ran")
+    @StackTrace(false)
+    public static class Frame extends Event {
+        @Label("Ticks Run")
+        public int ticks;
+
+        @Label("Active Balls")
+        public int activeBalls;
+
+        @Label("Line Segments")
+        public int segments;
+    }
+
+    @Name("inkball.Capture")
+    @Label("Ball Capture")
+    @Category("Inkball")
+    @Description("A ball sank into a hole")
+    @StackTrace(false)
+    public static class Capture extends Event {
+        @Label("Ball Colour")
+        public char colour;
+
+        @Label("Hole Colour")
+        public char holeColour;
+
+        @Label("Hole X")
+        @Description("X position of the hole centre in cells")
+        public float holeX;
+
+        @Label("Hole Y")
+        @Description("Y position of the hole centre in cells")
+        public float holeY;
+
+        @Label("Correct Hole")
+        public boolean correct;
+
+        @Label("Score Change")
+        public int scoreDelta;
+    }
+
+    @Name("inkball.LineBounce")
+    @Label("Line Bounce")
+    @Category("Inkball")
+    @Description("A ball bounced off a player-drawn line, which was removed")
+    @StackTrace(false)
+    public static class LineBounce extends Event {
+        @Label("Line")
+        @Description("Draw order of the line within its level")
+        public int line;
+
+        @Label("Segment")
+        public int segment;
+
+        @Label("Line Segments")
+        public int lineSegments;
+
+        @Label("Segments Scanned")
+        @Description("Index entries tested to find the line")
+        public int scanned;
+    }
+
+    @Name("inkball.LevelLoad")
+    @Label("Level Load")
+    @Category("Inkball")
+    @Description("A level was loaded")
+    @StackTrace(false)
+    public static class LevelLoad extends Event {
+        @Label("Level")
+        public int level;
+
+        @Label("Parse Time")
+        @Description("Time to get the parsed level and its built board, including waiting for the background thread")
+        @Timespan(Timespan.NANOSECONDS)
+        public long parseTime;
+
+        @Label("Build Time")
+        @Description("Time to take over the board and create the balls")
+        @Timespan(Timespan.NANOSECONDS)
+        public long buildTime;
+    }
+}
@@ -0,0 +1,100 @@
+package inkball;
+
+/**
+ * The parts of a level built from its layout alone, ready for an engine to
+ * take over: the board with its hole flags, the collision grid, the hole
+ * field, the spawners and the balls placed on the board.
+ *
+ * None of these depend on the engine or on the level's random numbers, so
+ * {@link LevelCache} builds them on its background thread along with the
+ * parse of the next level, and moving to that level doesn't scan a large
+ * board on the render thread. The board, grid and hole field change as the
+ * level is played, so each is handed to exactly one engine load.
+ *
+ * Responsibilities of the LevelBoard class include:
+ * - Building the board, marking the lower halves of holes.
+ * - Compiling the collision grid and hole field of the board.
+ * - Finding the spawners and the balls placed on the board.
+*/
+public class LevelBoard {
+    public final LevelData level; // The level this was built from
+    public final TileMap board; // Tiles of the level, with the lower halves of holes flagged
+    public final CollisionGrid grid; // Compiled collision data of the board
+    public final HoleField holes; // Nearest hole of each cell of the board
+    public final int spawnerCount; // Number of spawners on the board
+    public final int[][] spawnLoc; // Cell of each spawner
+    public final int presetCount; // Number of ball tiles on the layout, which sizes the ball store
+
+    // Balls placed on the board, in the order they are spawned
+    public final int ballCount; // Number of balls placed
+    public final int[] ballX; // Cell column of each ball
+    public final int[] ballY; // Cell row of each ball
+    public final char[] ballColour; // Colour of each ball
+
+    /**
+     * Constructor for the LevelBoard object, building everything from a level's layout.
+     * @param level The level to build.
+    */
+    public LevelBoard(LevelData level) {
+        this.level = level;
+        board = new TileMap(level);
+
+        int presets = 0;
+        int spawners = 0;
+        for (int i = 0; i < board.height; i++) {
+            for (int j = 0; j < board.width; j++) {
+                char type = board.get(j, i);
+                if (type == 'B') {
+                    presets++; // Count pre-set balls in the level
+                }
+                else if (type == 'S') {
+                    spawners++; // Count spawners in the level
+                }
+            }
+        }
+        presetCount = presets;
+        spawnerCount = spawners;
+
+        // Mark the lower half of holes and find the balls placed on the board
+        ballX = new int[presets];
+        ballY = new int[presets];
+        ballColour = new char[presets];
+        int balls = 0;
+        for (int i = 0; i < board.height; i++) {
+            for (int j = 0; j < board.width; j++) {
+                char type = board.get(j, i);
+                if (type == 'H') {
+                    board.set(j, i+1, Tile.HOLE_FLAG); // won't draw these tiles
+                    board.set(j+1, i+1, Tile.HOLE_FLAG);
+                    j++;
+                }
+                else if (type == 'B') {
+                    ballX[balls] = j;
+                    ballY[balls] = i;
+                    ballColour[balls] = board.get(j+1, i);
+                    balls++;
+                    j++;
+                }
+                else if (type == 'A') {
+                    j++;
+                }
+            }
+        }
+        ballCount = balls;
+        grid = new CollisionGrid(board); // Resolve walls, holes and accelerators once for the whole level
+        holes = new HoleField(grid);
+
+        // Save locations of spawners on the board
+        spawnLoc = new int[spawnerCount][2]; // Array to hold spawner coordinates
+        int spawnersFilled = 0;
+        for (int i = 0; i < board.height; i++) {
+            for (int j = 0; j < board.width; j++) {
+                if (level.tile(j, i) == 'S') {
+                    spawnLoc[spawnersFilled][0] = j;
+                    spawnLoc[spawnersFilled][1] = i;
+                    spawnersFilled++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package inkball;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import processing.data.JSONObject;
+
+/**
+ * Parsed levels kept in their binary form, with the next level parsed and
+ * built on a background thread.
+ *
+ * Each level is parsed from the configuration and its layout file at most
+ * once. While a level is being played the next one is parsed in the
+ * background and its {@link LevelBoard} is built, so moving to it doesn't
+ * stall the frame that finishes the current level, and resets and replays
+ * only decode the binary form. A built board is changed by play, so it is
+ * handed to one load only; loads with none waiting build their own.
+ *
+ * Responsibilities of the LevelCache class include:
+ * - Parsing each level at most once and keeping it in binary form.
+ * - Parsing and building levels ahead of time on a shared background thread.
+ * - Handing out decoded levels and built boards, waiting for the background thread if it is working on them.
+*/
+public class LevelCache {
+    // One loader thread is shared by every engine, so running many games at once doesn't create many threads
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "inkball-level-loader");
+        thread.setDaemon(true); // Never keep the game running after the window closes
+        return thread;
+    });
+
+    private final JSONObject config; // Configuration the levels are parsed from
+    private final FutureTask<byte[]>[] levels; // Parse of each level by number - 1, null until first needed
+    private final FutureTask<LevelBoard>[] boards; // Board built ahead for the next load of each level, null when none is waiting
+
+    /**
+     * Constructor for the LevelCache object.
+     * @param config The loaded configuration.
+     * @param levelCount The number of levels in the configuration.
+    */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Arrays of a generic type can only be created raw
+    public LevelCache(JSONObject config, int levelCount) {
+        this.config = config;
+        levels = new FutureTask[levelCount];
+        boards = new FutureTask[levelCount];
+    }
+
+    /**
+     * Start parsing a level and building its board in the background, unless that has been done already.
+     * @param levelNum The level number (starting at 1).
+    */
+    public void preload(int levelNum) {
+        if (levelNum < 1 || levelNum > levels.length) {
+            return;
+        }
+        FutureTask<byte[]> parse = null;
+        FutureTask<LevelBoard> build;
+        synchronized (this) {
+            if (boards[levelNum - 1] != null) {
+                return; // A built board is already waiting
+            }
+            if (levels[levelNum - 1] == null) {
+                parse = task(levelNum);
+            }
+            build = buildTask(levelNum);
+            boards[levelNum - 1] = build;
+        }
+        if (parse != null) {
+            LOADER.execute(parse);
+        }
+        LOADER.execute(build);
+    }
+
+    /**
+     * Get a level, parsing it now unless it has already been parsed or is being parsed in the background.
+     * @param levelNum The level number (starting at 1).
+     * @return The decoded level.
+    */
+    public LevelData get(int levelNum) {
+        FutureTask<byte[]> task;
+        synchronized (this) {
+            task = (levels[levelNum - 1] != null) ? levels[levelNum - 1] : task(levelNum);
+        }
+        task.run(); // Does nothing if the task has already run or is running in the background
+        return LevelData.fromBytes(result(task, levelNum));
+    }
+
+    /**
+     * Get a built level for one load, taking the one built in the background if there is one and building it now otherwise.
+     * @param levelNum The level number (starting at 1).
+     * @return The built level, which belongs to the caller.
+    */
+    public LevelBoard build(int levelNum) {
+        FutureTask<LevelBoard> task;
+        synchronized (this) {
+            task = (boards[levelNum - 1] != null) ? boards[levelNum - 1] : buildTask(levelNum);
+            boards[levelNum - 1] = null; // Taken, so no other load gets the same board
+        }
+        task.run(); // Does nothing if the task has already run or is running in the background
+        return result(task, levelNum);
+    }
+
+    /**
+     * Wait for a task of a level and give its result, passing on what it threw.
+     * @param task The task.
+     * @param levelNum The level number, for the error message.
+     * @return The result of the task.
+    */
+    private static <T> T result(FutureTask<T> task, int levelNum) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading level " + levelNum, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not load level " + levelNum, e.getCause());
+        }
+    }
+
+    /**
+     * Create and remember the task that parses a level. Must be called while holding the lock.
+     * @param levelNum The level number (starting at 1).
+     * @return The new task.
+    */
+    private FutureTask<byte[]> task(int levelNum) {
+        FutureTask<byte[]> task = new FutureTask<>(() -> LevelData.parse(config, levelNum).toBytes());
+        levels[levelNum - 1] = task;
+        return task;
+    }
+
+    /**
+     * Create the task that builds a level's board, parsing the level first if needed.
+     * @param levelNum The level number (starting at 1).
+     * @return The new task.
+    */
+    private FutureTask<LevelBoard> buildTask(int levelNum) {
+        return new FutureTask<>(() -> new LevelBoard(get(levelNum)));
+    }
+}
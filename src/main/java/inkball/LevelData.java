@@ -0,0 +1,186 @@
+package inkball;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import processing.core.PApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+/**
+ * Everything needed to build a level, parsed from the configuration and the
+ * layout file.
+ *
+ * A level is parsed from text once and then kept in a compact binary form
+ * (see {@link #toBytes()}), which is much faster to read back than JSON and
+ * text, so resets and replays don't parse anything.
+ *
+ * Responsibilities of the LevelData class include:
+ * - Parsing a level from the configuration and its layout file.
+ * - Writing and reading the binary form of a level.
+ * - Giving the tiles, balls, timers and score values of the level.
+*/
+public class LevelData {
+    private static final int FORMAT_VERSION = 2; // Changed whenever the binary layout changes
+
+    public int width; // Number of tiles across
+    public int height; // Number of tiles down
+    public byte[] layout; // Tile characters at y * width + x, as they appear in the layout file
+    public char[] balls; // Colours of the balls queued in the configuration, in order
+    public int time; // Time limit of the level in seconds, or -1 for no limit
+    public int spawnInterval; // Seconds between ball spawns
+    public boolean ballCollisions; // Whether balls bounce off each other
+    public boolean hasSeed; // Whether the level sets its own seed
+    public long seed; // Seed of the level's random numbers, if it sets one
+    public int[] scoreInc; // Score for capturing each colour in the right hole
+    public int[] scoreDec; // Score lost for capturing each colour in the wrong hole
+
+    /**
+     * Get the tile character at a position.
+     * @param x The x index of the tile.
+     * @param y The y index of the tile.
+     * @return The tile character.
+    */
+    public char tile(int x, int y) {
+        return (char) layout[y * width + x];
+    }
+
+    /**
+     * Parse a level from the configuration and its layout file.
+     * @param config The loaded configuration.
+     * @param levelNum The level number (starting at 1).
+     * @return The parsed level.
+    */
+    public static LevelData parse(JSONObject config, int levelNum) {
+        LevelData data = new LevelData();
+
+        // Load the levels array from the config JSON
+        JSONArray levels = config.getJSONArray("levels");
+        JSONObject level = levels.getJSONObject(levelNum - 1); // Get the specific level to load
+
+        // Load the level layout from the file, sized to its longest line and its last non-empty line
+        String[] levelLayout = PApplet.loadStrings(new File(level.getString("layout"))); // Loads the text listed out by column
+        data.height = levelLayout.length;
+        while (data.height > 0 && levelLayout[data.height - 1].isEmpty()) {
+            data.height--;
+        }
+        data.width = 0;
+        for (int i = 0; i < data.height; i++) {
+            data.width = Math.max(data.width, levelLayout[i].length());
+        }
+        data.layout = new byte[data.width * data.height];
+        Arrays.fill(data.layout, (byte) TileMap.EMPTY); // Short lines are padded with floor
+        for (int i = 0; i < data.height; i++) {
+            for (int j = 0; j < levelLayout[i].length(); j++) {
+                data.layout[i * data.width + j] = (byte) levelLayout[i].charAt(j);
+            }
+        }
+
+        // Assign colors to the balls queued in the configuration
+        JSONArray ballsJson = level.getJSONArray("balls");
+        data.balls = new char[ballsJson.size()];
+        for (int i = 0; i < ballsJson.size(); i++) {
+            String ballColour = ballsJson.getString(i);
+            char ballType = '0';
+            for (int j = 0; j < App.COLOURS.length; j++) {
+                if (ballColour.equals(App.COLOURS[j])) {
+                    ballType = (char) (j + '0'); // Assign color type based on the index
+                }
+            }
+            data.balls[i] = ballType;
+        }
+
+        // Set the time limit for the level
+        try {
+            data.time = level.getInt("time");
+            if (data.time < 0) {
+                data.time = -1; // -1 is flag for infinite time
+            }
+        } catch (Exception e) {
+            data.time = -1;
+        }
+
+        data.spawnInterval = level.getInt("spawn_interval");
+        data.ballCollisions = level.getBoolean("ball_collisions", false);
+        data.hasSeed = level.hasKey("seed");
+        data.seed = data.hasSeed ? level.getLong("seed") : 0;
+
+        // Set score values based on level configuration
+        float scoreIncMod = level.getFloat("score_increase_from_hole_capture_modifier");
+        float scoreDecMod = level.getFloat("score_decrease_from_wrong_hole_modifier");
+        data.scoreInc = new int[App.COLOURS.length];
+        data.scoreDec = new int[App.COLOURS.length];
+        JSONObject scoreIncJson = config.getJSONObject("score_increase_from_hole_capture");
+        for (int i = 0; i < data.scoreInc.length; i++) {
+            data.scoreInc[i] = (int) (scoreIncJson.getInt(App.COLOURS[i]) * scoreIncMod); // Set score increment values
+        }
+        JSONObject scoreDecJson = config.getJSONObject("score_increase_from_hole_capture");
+        for (int i = 0; i < data.scoreDec.length; i++) {
+            data.scoreDec[i] = (int) (scoreDecJson.getInt(App.COLOURS[i]) * scoreDecMod); // Set score decrement values
+        }
+        return data;
+    }
+
+    /**
+     * Write the level in its binary form.
+     * @return The encoded level.
+    */
+    public byte[] toBytes() {
+        int size = 4 * 3 + layout.length + 4 + balls.length + 4 * 2 + 1 + 1 + 8 + 4 + 4 * (scoreInc.length + scoreDec.length);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.put(layout);
+        buffer.putInt(balls.length);
+        for (char ball : balls) {
+            buffer.put((byte) ball);
+        }
+        buffer.putInt(time);
+        buffer.putInt(spawnInterval);
+        buffer.put((byte) (ballCollisions ? 1 : 0));
+        buffer.put((byte) (hasSeed ? 1 : 0));
+        buffer.putLong(seed);
+        buffer.putInt(scoreInc.length);
+        for (int i = 0; i < scoreInc.length; i++) {
+            buffer.putInt(scoreInc[i]);
+            buffer.putInt(scoreDec[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Read a level from its binary form.
+     * @param bytes The encoded level.
+     * @return The decoded level.
+    */
+    public static LevelData fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported level format");
+        }
+        LevelData data = new LevelData();
+        data.width = buffer.getInt();
+        data.height = buffer.getInt();
+        data.layout = new byte[data.width * data.height];
+        buffer.get(data.layout);
+        data.balls = new char[buffer.getInt()];
+        for (int i = 0; i < data.balls.length; i++) {
+            data.balls[i] = (char) buffer.get();
+        }
+        data.time = buffer.getInt();
+        data.spawnInterval = buffer.getInt();
+        data.ballCollisions = buffer.get() != 0;
+        data.hasSeed = buffer.get() != 0;
+        data.seed = buffer.getLong();
+        int colours = buffer.getInt();
+        data.scoreInc = new int[colours];
+        data.scoreDec = new int[colours];
+        for (int i = 0; i < colours; i++) {
+            data.scoreInc[i] = buffer.getInt();
+            data.scoreDec[i] = buffer.getInt();
+        }
+        return data;
+    }
+}
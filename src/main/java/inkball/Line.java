@@ -1,50 +1,240 @@
 package inkball;
 
-import java.util.ArrayList;
-
-import processing.core.PApplet;
-import processing.core.PVector;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Represents a line that can be drawn in the Inkball game.
- * 
- * Lines can interact with the balls, affecting their movement and behavior. 
- * They may be used as obstacles or pathways in the game. The class 
- * includes methods for determining if a ball is near a line and for 
+ *
+ * Lines can interact with the balls, affecting their movement and behavior.
+ * They may be used as obstacles or pathways in the game. The class
+ * includes methods for determining if a ball is near a line and for
  * handling interactions between the ball and the line.
- * 
+ *
+ * Segments are stored packed in a single float array (start x, start y,
+ * end x, end y per segment) that doubles in size when full, so adding and
+ * testing segments creates no objects.
+ *
+ * A stroke is simplified as it is drawn. Zero-length segments are dropped,
+ * and a segment that continues the previous one is merged into it as long as
+ * every mouse position the merged segment replaces stays within
+ * {@link #TOLERANCE} pixels of it (the same bound Ramer-Douglas-Peucker
+ * simplification keeps, applied one point at a time). Straight and gently
+ * curving strokes therefore end up with far fewer segments, while no part of
+ * the line moves by more than the tolerance. Segment directions, and so the
+ * normals balls bounce off, can turn: by at most asin(2 * TOLERANCE / d)
+ * against a mouse movement of length d, as both of its ends stay within the
+ * tolerance of the segment replacing it. Long movements barely change, and
+ * jitter of a few pixels is smoothed out.
+ *
  * Responsibilities of the Line class include:
  * - Storing the coordinates and properties of the line.
+ * - Simplifying the line as segments are added.
  * - Checking for proximity to balls and calculating collision responses.
  * - Managing the visual representation of the line on the game board.
+ * - Writing and reading the line as part of a {@link Snapshot}.
 */
 public class Line {
-    // List of line segments making up the entire line
-    public ArrayList<PVector[]> lines = new ArrayList<>(); // Holds start and end vectors of each line
+    private static final int INITIAL_CAPACITY = 16; // Number of segments before the storage grows
+    public static final float TOLERANCE = 2; // Furthest a replaced mouse position may be from the simplified line (pixels)
+    private static final int MAX_MERGED = 32; // Most mouse positions merged into one segment, to bound the cost of each addition
+
+    // Packed line segments making up the entire line
+    private float[] segments = new float[INITIAL_CAPACITY * 4]; // Holds start and end coordinates of each segment
+    private int segmentCount; // Number of segments in use
+    private final float[] merged = new float[MAX_MERGED * 2]; // Mouse positions merged into the last segment, as x, y pairs
+    private int mergedCount; // Number of positions in merged
+
+    // Bounding box of all segments, used to skip lines quickly and to find the line's grid cells
+    public float minX = Float.MAX_VALUE;
+    public float minY = Float.MAX_VALUE;
+    public float maxX = -Float.MAX_VALUE;
+    public float maxY = -Float.MAX_VALUE;
+
+    LineIndex index; // Spatial index the line is registered in, if any
+    int order; // Position of the line in the draw order of its index
 
     /**
-        * Add a segment to the line.
-        * @param x1 The starting x-coordinate of the line segment.
-        * @param y1 The starting y-coordinate of the line segment.
-        * @param x2 The ending x-coordinate of the line segment.
-        * @param y2 The ending y-coordinate of the line segment.
+        * Add a segment to the line, simplifying it as it goes.
+        * A zero-length segment is ignored, and a segment starting where the
+        * last one ends is merged into it if the result stays within the tolerance.
+        * @param startX The starting x-coordinate of the line segment.
+        * @param startY The starting y-coordinate of the line segment.
+        * @param endX The ending x-coordinate of the line segment.
+        * @param endY The ending y-coordinate of the line segment.
     */
     void addSegment(float startX, float startY, float endX, float endY) {
-        PVector start = new PVector(startX, startY);
-        PVector end = new PVector(endX, endY);
-        PVector[] line = {start, end};
-        lines.add(line);
+        if (startX == endX && startY == endY) {
+            return; // The mouse didn't move, and a segment without a direction can't be bounced off
+        }
+        if (segmentCount > 0 && canMerge(startX, startY, endX, endY)) {
+            int seg = segmentCount - 1;
+            int i = seg * 4;
+            merged[mergedCount * 2] = startX;
+            merged[mergedCount * 2 + 1] = startY;
+            mergedCount++;
+            float oldX2 = segments[i + 2];
+            float oldY2 = segments[i + 3];
+            segments[i + 2] = endX;
+            segments[i + 3] = endY;
+            grow(endX, endY, endX, endY);
+            if (index != null) {
+                index.moveSegment(this, seg, segments[i], segments[i + 1], oldX2, oldY2);
+            }
+            return;
+        }
+
+        if (segmentCount * 4 == segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2); // Double the capacity when full
+        }
+        int i = segmentCount * 4;
+        segments[i] = startX;
+        segments[i + 1] = startY;
+        segments[i + 2] = endX;
+        segments[i + 3] = endY;
+        segmentCount++;
+        mergedCount = 0;
+
+        // Grow the bounding box and keep the spatial index up to date
+        grow(startX, startY, endX, endY);
+        if (index != null) {
+            index.addSegment(this, segmentCount - 1);
+        }
+    }
+
+    /**
+        * Check whether a new segment can be merged into the last one.
+        * It can if it starts where the last one ends, and the segment from the
+        * start of the last one to the new end passes within the tolerance of
+        * every mouse position it would replace.
+        * @param startX The starting x-coordinate of the new segment.
+        * @param startY The starting y-coordinate of the new segment.
+        * @param endX The ending x-coordinate of the new segment.
+        * @param endY The ending y-coordinate of the new segment.
+        * @return boolean Whether the segments can be merged.
+    */
+    private boolean canMerge(float startX, float startY, float endX, float endY) {
+        int i = (segmentCount - 1) * 4;
+        if (segments[i + 2] != startX || segments[i + 3] != startY || mergedCount == MAX_MERGED) {
+            return false; // Not a continuation, or the last segment has merged as much as it may
+        }
+        float x1 = segments[i];
+        float y1 = segments[i + 1];
+        float toleranceSq = TOLERANCE * TOLERANCE;
+        if (distanceSq(startX, startY, x1, y1, endX, endY) > toleranceSq) {
+            return false;
+        }
+        for (int p = 0; p < mergedCount * 2; p += 2) {
+            if (distanceSq(merged[p], merged[p + 1], x1, y1, endX, endY) > toleranceSq) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+        * Grow the bounding box of the line to cover a segment.
+        * @param x1 The starting x-coordinate of the segment.
+        * @param y1 The starting y-coordinate of the segment.
+        * @param x2 The ending x-coordinate of the segment.
+        * @param y2 The ending y-coordinate of the segment.
+    */
+    private void grow(float x1, float y1, float x2, float y2) {
+        minX = Math.min(minX, Math.min(x1, x2));
+        minY = Math.min(minY, Math.min(y1, y2));
+        maxX = Math.max(maxX, Math.max(x1, x2));
+        maxY = Math.max(maxY, Math.max(y1, y2));
+    }
+
+    /**
+        * Get the number of segments in the line.
+        * @return int The segment count.
+    */
+    public int size() {
+        return segmentCount;
+    }
+
+    // Segment endpoint accessors
+    public float segmentX1(int seg) { return segments[seg * 4]; }
+    public float segmentY1(int seg) { return segments[seg * 4 + 1]; }
+    public float segmentX2(int seg) { return segments[seg * 4 + 2]; }
+    public float segmentY2(int seg) { return segments[seg * 4 + 3]; }
+
+    /**
+        * Write the segments and bounding box of the line to a snapshot.
+        * @param out The snapshot being saved.
+        * @param drawing Whether the line is still being drawn, so the mouse positions merged into its last segment are needed too.
+        * @throws IOException If the snapshot can't be written.
+    */
+    void write(Snapshot out, boolean drawing) throws IOException {
+        out.putInt(segmentCount);
+        out.putFloats(segments, segmentCount * 4);
+        out.putFloat(minX);
+        out.putFloat(minY);
+        out.putFloat(maxX);
+        out.putFloat(maxY);
+        if (drawing) {
+            out.putInt(mergedCount);
+            out.putFloats(merged, mergedCount * 2);
+        }
+    }
+
+    /**
+        * Read a line written by {@link #write}. The segments are taken as they were, without simplifying them again.
+        * @param in The snapshot being loaded.
+        * @param drawing Whether the line was still being drawn when it was saved.
+        * @return Line The line, not yet in any index.
+        * @throws IOException If the snapshot can't be read or is damaged.
+    */
+    static Line read(Snapshot in, boolean drawing) throws IOException {
+        Line line = new Line();
+        line.segmentCount = in.getCount(1 << 24);
+        if (line.segmentCount * 4 > line.segments.length) {
+            line.segments = new float[line.segmentCount * 4];
+        }
+        in.getFloats(line.segments, line.segmentCount * 4);
+        line.minX = in.getFloat();
+        line.minY = in.getFloat();
+        line.maxX = in.getFloat();
+        line.maxY = in.getFloat();
+        if (drawing) {
+            line.mergedCount = in.getCount(MAX_MERGED);
+            in.getFloats(line.merged, line.mergedCount * 2);
+        }
+        return line;
+    }
+
+    /**
+        * Check if a point is within a distance of the line's bounding box.
+        * @param x The x-coordinate of the point.
+        * @param y The y-coordinate of the point.
+        * @param threshold The distance threshold.
+        * @return boolean Whether the point could be near any of the line's segments.
+    */
+    boolean boundsNear(float x, float y, int threshold) {
+        return x >= minX - threshold && x <= maxX + threshold && y >= minY - threshold && y <= maxY + threshold;
     }
 
     /**
-        * Draw the entire line on the screen.
-        * @param app The PApplet object used for drawing.
+        * Draw the segments of the line that are in the camera's view.
+        * @param app The PApplet object used for drawing, with the camera's offset applied.
     */
     void draw(App app) {
+        Camera camera = app.camera;
+        float half = 5; // Half the stroke weight, so segments just out of view still show their edge
+        if (segmentCount == 0 || !camera.sees(minX - half, minY - half, maxX + half, maxY + half)) {
+            return;
+        }
         app.stroke(0); // Set stroke color to black for the line
         app.strokeWeight(10);
-        for (PVector[] points : lines) {
-            app.line(points[0].x, points[0].y, points[1].x, points[1].y); // Draw each segment
+        for (int i = 0; i < segmentCount * 4; i += 4) {
+            float x1 = segments[i];
+            float y1 = segments[i + 1];
+            float x2 = segments[i + 2];
+            float y2 = segments[i + 3];
+            if (camera.sees(Math.min(x1, x2) - half, Math.min(y1, y2) - half, Math.max(x1, x2) + half, Math.max(y1, y2) + half)) {
+                app.line(x1, y1, x2, y2); // Draw each segment in view
+            }
         }
         app.noStroke(); // Disable stroke after drawing the line
     }
@@ -53,26 +243,150 @@ public class Line {
         * Check if the mouse is near a line segment.
         * @param mouseX The current mouse x-coordinate.
         * @param mouseY The current mouse y-coordinate.
-        * @param tolerance The distance threshold for proximity detection.
-        * @return PVector[] The segment near the mouse, or null if no segment is near.
+        * @param threshold The distance threshold for proximity detection.
+        * @return int The index of the first segment near the mouse, or -1 if no segment is near.
     */
-    PVector[] isNearLine(float mouseX, float mouseY, int threshold) {
-        PVector mousePos = new PVector(mouseX, mouseY);
+    int isNearLine(float mouseX, float mouseY, int threshold) {
         // Check each line segment to see if the mouse is within a certain threshold
-        for (PVector[] l : lines) {
-            // will determine closest point using projection
-            PVector lineVector = PVector.sub(l[1], l[0]); // B - A -> AB
-            PVector pointVector = PVector.sub(mousePos, l[0]);
-            
-            float projScalar = PVector.dot(pointVector, lineVector) / PVector.dot(lineVector, lineVector);
-            projScalar = PApplet.constrain(projScalar, 0, 1); // to ensure closest point is within line
-
-            PVector closestPoint = PVector.add(l[0], PVector.mult(lineVector, projScalar));
-            float distance = PVector.dist(closestPoint, mousePos);
-            if (distance <= threshold) {
-                return l; // Return the segment if within tolerance
+        for (int i = 0; i < segmentCount; i++) {
+            if (isSegmentNear(i, mouseX, mouseY, threshold)) {
+                return i; // Return the segment if within tolerance
+            }
+        }
+        return -1; // No segment found near the mouse
+    }
+
+    /**
+        * Check if a point is near one segment of the line.
+        * @param seg The index of the segment.
+        * @param mouseX The x-coordinate of the point.
+        * @param mouseY The y-coordinate of the point.
+        * @param threshold The distance threshold for proximity detection.
+        * @return boolean Whether the segment is within the threshold of the point.
+    */
+    boolean isSegmentNear(int seg, float mouseX, float mouseY, int threshold) {
+        int i = seg * 4;
+        float distanceSq = distanceSq(mouseX, mouseY, segments[i], segments[i + 1], segments[i + 2], segments[i + 3]);
+        return distanceSq <= (float) threshold * threshold;
+    }
+
+    /**
+        * Find when a moving point first comes within a distance of one segment of the line.
+        * @param seg The index of the segment.
+        * @param px The starting x-coordinate of the point.
+        * @param py The starting y-coordinate of the point.
+        * @param dx The x movement of the point.
+        * @param dy The y movement of the point.
+        * @param threshold The distance at which the point touches the segment.
+        * @return float The fraction of the movement (0 to 1) at which the point touches the segment, or -1 if it doesn't.
+    */
+    float timeOfImpact(int seg, float px, float py, float dx, float dy, int threshold) {
+        int i = seg * 4;
+        return timeOfImpact(px, py, dx, dy, threshold, segments[i], segments[i + 1], segments[i + 2], segments[i + 3]);
+    }
+
+    /**
+        * Find when a moving point first comes within a distance of a line segment, without creating any objects.
+        * The points within the distance form a capsule around the segment: a
+        * band along each side and a circle around each end. The earliest of the
+        * times the point enters each of them is the time of impact. Like
+        * {@link #distanceSq}, a zero-length segment is never touched.
+        * @param px The starting x-coordinate of the point.
+        * @param py The starting y-coordinate of the point.
+        * @param dx The x movement of the point.
+        * @param dy The y movement of the point.
+        * @param threshold The distance at which the point touches the segment.
+        * @param x1 The starting x-coordinate of the segment.
+        * @param y1 The starting y-coordinate of the segment.
+        * @param x2 The ending x-coordinate of the segment.
+        * @param y2 The ending y-coordinate of the segment.
+        * @return float The fraction of the movement (0 to 1) at which the point touches the segment, or -1 if it doesn't.
+    */
+    static float timeOfImpact(float px, float py, float dx, float dy, int threshold, float x1, float y1, float x2, float y2) {
+        float thresholdSq = (float) threshold * threshold;
+        float distanceSq = distanceSq(px, py, x1, y1, x2, y2);
+        if (distanceSq == Float.POSITIVE_INFINITY) {
+            return -1;
+        }
+        if (distanceSq <= thresholdSq) {
+            return 0; // Already touching
+        }
+        float best = Float.POSITIVE_INFINITY;
+
+        // Band along the side the point starts on, within the length of the segment
+        float lineX = x2 - x1;
+        float lineY = y2 - y1;
+        float lengthSq = lineX * lineX + lineY * lineY;
+        float length = (float) Math.sqrt(lengthSq);
+        float normalX = -lineY / length;
+        float normalY = lineX / length;
+        float side = (px - x1) * normalX + (py - y1) * normalY; // Signed distance from the segment's line
+        float approach = dx * normalX + dy * normalY;
+        if (side > threshold && approach < 0 || side < -threshold && approach > 0) {
+            float t = ((side > 0 ? threshold : -threshold) - side) / approach;
+            float along = ((px + dx * t - x1) * lineX + (py + dy * t - y1) * lineY) / lengthSq;
+            if (along >= 0 && along <= 1) {
+                best = t;
             }
         }
-        return null; // No segment found near the mouse
+
+        // Circles around the ends
+        best = Math.min(best, circleTime(px - x1, py - y1, dx, dy, thresholdSq));
+        best = Math.min(best, circleTime(px - x2, py - y2, dx, dy, thresholdSq));
+        return (best <= 1) ? best : -1;
+    }
+
+    /**
+        * Find when a moving point enters a circle around the origin.
+        * @param px The starting x-coordinate of the point relative to the circle.
+        * @param py The starting y-coordinate of the point relative to the circle.
+        * @param dx The x movement of the point.
+        * @param dy The y movement of the point.
+        * @param radiusSq The squared radius of the circle.
+        * @return float The fraction of the movement at which the point enters the circle, or infinity if it doesn't.
+    */
+    private static float circleTime(float px, float py, float dx, float dy, float radiusSq) {
+        float a = dx * dx + dy * dy;
+        if (a == 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float b = px * dx + py * dy; // Half the linear term
+        float c = px * px + py * py - radiusSq;
+        float discriminant = b * b - a * c;
+        if (discriminant < 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float t = (-b - (float) Math.sqrt(discriminant)) / a;
+        return (t >= 0) ? t : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+        * Get the squared distance from a point to a line segment without creating any objects.
+        * A zero-length segment has no direction to bounce off, so it is treated as infinitely far away.
+        * @param px The x-coordinate of the point.
+        * @param py The y-coordinate of the point.
+        * @param x1 The starting x-coordinate of the segment.
+        * @param y1 The starting y-coordinate of the segment.
+        * @param x2 The ending x-coordinate of the segment.
+        * @param y2 The ending y-coordinate of the segment.
+        * @return float The squared distance from the point to the closest point on the segment.
+    */
+    static float distanceSq(float px, float py, float x1, float y1, float x2, float y2) {
+        // will determine closest point using projection
+        float lineX = x2 - x1; // B - A -> AB
+        float lineY = y2 - y1;
+        float lengthSq = lineX * lineX + lineY * lineY;
+        if (lengthSq == 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float pointX = px - x1;
+        float pointY = py - y1;
+
+        float projScalar = (pointX * lineX + pointY * lineY) / lengthSq;
+        projScalar = Math.max(0, Math.min(1, projScalar)); // to ensure closest point is within line
+
+        float dx = x1 + lineX * projScalar - px;
+        float dy = y1 + lineY * projScalar - py;
+        return dx * dx + dy * dy;
     }
 }
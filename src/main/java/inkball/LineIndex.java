@@ -0,0 +1,313 @@
+package inkball;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid index over the segments of all player-drawn lines.
+ *
+ * The drawing area is split into cells of {@link App#CELLSIZE} pixels. Every
+ * segment is registered in each cell its bounding box overlaps, so a proximity
+ * query only has to test the segments stored in the few cells around the
+ * query point instead of every segment of every line.
+ *
+ * Responsibilities of the LineIndex class include:
+ * - Registering lines and their segments as they are drawn.
+ * - Removing every entry of a line when the line is erased or bounced off.
+ * - Finding the line closest to the front of the draw order near a point.
+ * - Finding the first line a moving circle touches.
+ *
+ * Sweeps only read the index, so any number of threads can sweep at once as
+ * long as nothing is added or removed meanwhile and each thread passes its
+ * own {@link Hit} to keep the result in.
+*/
+public class LineIndex {
+    private static final int INITIAL_CELL_CAPACITY = 4; // Entries per cell before the cell grows
+
+    private final int cols; // Number of cells across
+    private final int rows; // Number of cells down
+    private final Line[][] cellLines; // Line of each entry, per cell
+    private final int[][] cellSegments; // Segment index of each entry, per cell
+    private final int[] cellCounts; // Number of entries used in each cell
+    int nextOrder; // Draw order given to the next line added
+
+    public int hitSegment; // Segment index of the last successful query, on the engine's thread
+    public int segmentCount; // Segments of all lines in the index
+
+    /**
+     * Where a sweep touched its line, kept by the caller so sweeps on different threads don't share a result.
+    */
+    public static final class Hit {
+        public int segment; // Segment index of the touched line
+        public float time; // Fraction of the movement at which the line was touched
+        public int scanned; // Entries tested by the sweep
+    }
+
+    /**
+     * Constructor for the LineIndex object.
+     * @param cols The number of cells across the drawing area.
+     * @param rows The number of cells down the drawing area.
+    */
+    public LineIndex(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        cellLines = new Line[cols * rows][];
+        cellSegments = new int[cols * rows][];
+        cellCounts = new int[cols * rows];
+    }
+
+    /**
+     * Add a line and all of its current segments to the index.
+     * Segments added to the line afterwards are indexed automatically.
+     * @param line The line to add.
+    */
+    public void add(Line line) {
+        line.index = this;
+        line.order = nextOrder++;
+        for (int i = 0; i < line.size(); i++) {
+            addSegment(line, i);
+        }
+    }
+
+    /**
+     * Remove a line and all of its segments from the index.
+     * @param line The line to remove.
+    */
+    public void remove(Line line) {
+        if (line.index != this) {
+            return;
+        }
+        line.index = null;
+        segmentCount -= line.size();
+        if (line.size() == 0) {
+            return;
+        }
+        int minCol = col(line.minX);
+        int maxCol = col(line.maxX);
+        int minRow = row(line.minY);
+        int maxRow = row(line.maxY);
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                int cell = r * cols + c;
+                Line[] entries = cellLines[cell];
+                int[] segments = cellSegments[cell];
+                int kept = 0;
+                for (int i = 0; i < cellCounts[cell]; i++) { // Compact the cell, dropping this line's entries
+                    if (entries[i] != line) {
+                        entries[kept] = entries[i];
+                        segments[kept] = segments[i];
+                        kept++;
+                    }
+                }
+                for (int i = kept; i < cellCounts[cell]; i++) {
+                    entries[i] = null; // Don't keep removed lines reachable
+                }
+                cellCounts[cell] = kept;
+            }
+        }
+    }
+
+    /**
+     * Register one segment of a line in every cell its bounding box overlaps.
+     * @param line The line the segment belongs to.
+     * @param seg The index of the segment within the line.
+    */
+    void addSegment(Line line, int seg) {
+        float x1 = line.segmentX1(seg);
+        float y1 = line.segmentY1(seg);
+        float x2 = line.segmentX2(seg);
+        float y2 = line.segmentY2(seg);
+        segmentCount++;
+        int minCol = col(Math.min(x1, x2));
+        int maxCol = col(Math.max(x1, x2));
+        int minRow = row(Math.min(y1, y2));
+        int maxRow = row(Math.max(y1, y2));
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                int cell = r * cols + c;
+                int count = cellCounts[cell];
+                if (cellLines[cell] == null) {
+                    cellLines[cell] = new Line[INITIAL_CELL_CAPACITY];
+                    cellSegments[cell] = new int[INITIAL_CELL_CAPACITY];
+                }
+                else if (count == cellLines[cell].length) {
+                    cellLines[cell] = Arrays.copyOf(cellLines[cell], count * 2);
+                    cellSegments[cell] = Arrays.copyOf(cellSegments[cell], count * 2);
+                }
+                cellLines[cell][count] = line;
+                cellSegments[cell][count] = seg;
+                cellCounts[cell] = count + 1;
+            }
+        }
+    }
+
+    /**
+     * Register a segment again after its end has moved, as when a line merges a new segment into its last one.
+     * @param line The line the segment belongs to.
+     * @param seg The index of the segment within the line.
+     * @param oldX1 The starting x-coordinate of the segment before it moved.
+     * @param oldY1 The starting y-coordinate of the segment before it moved.
+     * @param oldX2 The ending x-coordinate of the segment before it moved.
+     * @param oldY2 The ending y-coordinate of the segment before it moved.
+    */
+    void moveSegment(Line line, int seg, float oldX1, float oldY1, float oldX2, float oldY2) {
+        int minCol = col(Math.min(oldX1, oldX2));
+        int maxCol = col(Math.max(oldX1, oldX2));
+        int minRow = row(Math.min(oldY1, oldY2));
+        int maxRow = row(Math.max(oldY1, oldY2));
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                int cell = r * cols + c;
+                Line[] entries = cellLines[cell];
+                int[] segments = cellSegments[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    if (entries[i] == line && segments[i] == seg) { // A segment has at most one entry per cell
+                        int last = --cellCounts[cell];
+                        entries[i] = entries[last]; // Queries don't depend on the order of entries
+                        segments[i] = segments[last];
+                        entries[last] = null;
+                        break;
+                    }
+                }
+            }
+        }
+        segmentCount--;
+        addSegment(line, seg);
+    }
+
+    /**
+     * Find the earliest drawn line with a segment within the threshold of a point.
+     * Only the cells around the point are searched. The index of the matching
+     * segment is left in {@link #hitSegment}.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param threshold The distance threshold for proximity detection.
+     * @return The matching line, or null if no segment is near.
+    */
+    public Line query(float x, float y, int threshold) {
+        int minCol = col(x - threshold);
+        int maxCol = col(x + threshold);
+        int minRow = row(y - threshold);
+        int maxRow = row(y + threshold);
+
+        Line best = null;
+        int bestSegment = -1;
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                int cell = r * cols + c;
+                Line[] entries = cellLines[cell];
+                int[] segments = cellSegments[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    Line l = entries[i];
+                    int seg = segments[i];
+                    // Keep the earliest drawn line and its earliest segment, as a linear scan would
+                    if (best != null && (l.order > best.order || (l == best && seg >= bestSegment))) {
+                        continue;
+                    }
+                    if (!l.boundsNear(x, y, threshold)) {
+                        continue;
+                    }
+                    if (l.isSegmentNear(seg, x, y, threshold)) {
+                        best = l;
+                        bestSegment = seg;
+                    }
+                }
+            }
+        }
+        hitSegment = bestSegment;
+        return best;
+    }
+
+    /**
+     * Find the first line a point moving in a straight line comes within the
+     * threshold of. Only the cells around the path are searched. The touched
+     * segment and the time of contact are left in the caller's result holder,
+     * and lines touched at the same time resolve to the earliest drawn. Lines
+     * in the skip range are passed over as if they had been removed.
+     * @param x The starting x-coordinate of the point.
+     * @param y The starting y-coordinate of the point.
+     * @param dx The x movement of the point.
+     * @param dy The y movement of the point.
+     * @param threshold The distance at which the point touches a line.
+     * @param skip Lines to pass over, or null for none.
+     * @param skipFrom The first entry of skip to pass over.
+     * @param skipTo One past the last entry of skip to pass over.
+     * @param hit Where to leave the touched segment, the time of contact and the entries tested.
+     * @return The touched line, or null if the point touches no line on the way.
+    */
+    public Line sweep(float x, float y, float dx, float dy, int threshold, Line[] skip, int skipFrom, int skipTo, Hit hit) {
+        float minX = Math.min(x, x + dx) - threshold;
+        float maxX = Math.max(x, x + dx) + threshold;
+        float minY = Math.min(y, y + dy) - threshold;
+        float maxY = Math.max(y, y + dy) + threshold;
+        int minCol = col(minX);
+        int maxCol = col(maxX);
+        int minRow = row(minY);
+        int maxRow = row(maxY);
+
+        Line best = null;
+        int bestSegment = -1;
+        float bestTime = Float.POSITIVE_INFINITY;
+        int tested = 0;
+        for (int r = minRow; r <= maxRow; r++) {
+            for (int c = minCol; c <= maxCol; c++) {
+                int cell = r * cols + c;
+                Line[] entries = cellLines[cell];
+                int[] segments = cellSegments[cell];
+                tested += cellCounts[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    Line l = entries[i];
+                    int seg = segments[i];
+                    if (l.maxX < minX || l.minX > maxX || l.maxY < minY || l.minY > maxY) {
+                        continue; // The whole line is away from the path
+                    }
+                    float t = l.timeOfImpact(seg, x, y, dx, dy, threshold);
+                    if (t < 0 || t > bestTime) {
+                        continue;
+                    }
+                    // At the same time, keep the earliest drawn line and its earliest segment, as a query would
+                    if (t == bestTime && (l.order > best.order || (l == best && seg >= bestSegment))) {
+                        continue;
+                    }
+                    if (skipTo > skipFrom && skipped(l, skip, skipFrom, skipTo)) {
+                        continue;
+                    }
+                    best = l;
+                    bestSegment = seg;
+                    bestTime = t;
+                }
+            }
+        }
+        hit.segment = bestSegment;
+        hit.time = bestTime;
+        hit.scanned = tested;
+        return best;
+    }
+
+    // Whether a line is in a range of lines a sweep passes over
+    private static boolean skipped(Line l, Line[] skip, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (skip[i] == l) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the column of the cell holding an x-coordinate, clamped to the grid.
+     * @param x The x-coordinate in pixels.
+     * @return The column index.
+    */
+    private int col(float x) {
+        return Math.max(0, Math.min(cols - 1, (int) Math.floor(x / App.CELLSIZE)));
+    }
+
+    /**
+     * Get the row of the cell holding a y-coordinate, clamped to the grid.
+     * @param y The y-coordinate in pixels.
+     * @return The row index.
+    */
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / App.CELLSIZE)));
+    }
+}
@@ -0,0 +1,236 @@
+package inkball;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Updates the balls in play on several threads, with exactly the result of
+ * updating them one after another on the engine's thread.
+ *
+ * A ball's own movement only depends on its own state, the board and the
+ * lines, so each tick runs in two phases. First every ball already in play
+ * is updated in parallel with a deferred {@link BallStore.Worker}: the ball
+ * moves as usual, but the lines it bounces off and the hole it falls into
+ * are recorded instead of being removed and scored. Then, on the engine's
+ * thread, the records are merged in the order the single threaded loop
+ * would have updated the balls. A record is only applied if every line the
+ * ball bounced off is still there; if an earlier ball has taken one of them
+ * the ball is put back where it started and updated again against the
+ * lines that are left. Lines a ball didn't touch can't change its path when
+ * they are removed, as a sweep finds the same earliest contact among fewer
+ * lines, so every record that passes the check is exactly what the single
+ * threaded update would have done. Balls that still have to spawn use the
+ * level's random numbers, so they are always updated during the merge.
+ *
+ * Splitting only pays off with many balls in play, so smaller ticks are
+ * updated on the engine's thread as before.
+ *
+ * Responsibilities of the ParallelBalls class include:
+ * - Updating the balls in play in parallel with deferred side effects.
+ * - Merging the recorded line bounces and captures in the single threaded order.
+ * - Updating again any ball whose record conflicts with an earlier ball's.
+*/
+public class ParallelBalls {
+    private static final int BALLS_PER_TASK = 64; // Balls updated by one task before it stops splitting
+
+    public int minBalls = 256; // Fewest balls in play for a tick to be split across threads
+    public int redone; // Balls updated again during the merge since the engine started, for profiling
+
+    private final ForkJoinPool pool; // Threads the balls are updated on
+    private BallStore.Worker[] workers = new BallStore.Worker[0]; // Scratch state and records of each task
+
+    // Record of each ball's deferred update, indexed by slot
+    private boolean[] speculated = new boolean[0]; // Whether the ball was updated in the parallel phase of this tick
+    private int[] task = new int[0]; // Task that updated the ball
+    private int[] bounceFrom = new int[0]; // First line bounce recorded for the ball in its task's worker
+    private int[] bounceTo = new int[0]; // One past the last line bounce recorded for the ball
+    private int[] captureHole = new int[0]; // Hole the ball fell into, or -1
+
+    // State of each ball before its deferred update, for updating it again
+    private float[] startX = new float[0];
+    private float[] startY = new float[0];
+    private float[] startXVel = new float[0];
+    private float[] startYVel = new float[0];
+    private float[] startSize = new float[0];
+    private char[] startColour = new char[0];
+
+    /**
+     * Constructor for the ParallelBalls object.
+     * @param threads The number of threads to update balls on.
+    */
+    public ParallelBalls(int threads) {
+        pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Put balls from the queue in play until enough are, then update every ball in play for one tick.
+     * @param engine The game engine the balls belong to.
+     * @param target The number of balls that should be in play.
+    */
+    public void updateActive(GameEngine engine, int target) {
+        BallStore balls = engine.balls;
+        balls.activate(target);
+        if (balls.activeCount < minBalls) {
+            balls.updateActive(engine, target); // Not worth splitting
+            return;
+        }
+        prepare(balls);
+
+        // Update every spawned ball in parallel, recording what it does to the lines and holes
+        int tasks = (balls.activeCount + BALLS_PER_TASK - 1) / BALLS_PER_TASK;
+        if (workers.length < tasks) {
+            int old = workers.length;
+            workers = Arrays.copyOf(workers, tasks);
+            for (int i = old; i < tasks; i++) {
+                workers[i] = new BallStore.Worker();
+                workers[i].deferred = true;
+            }
+        }
+        pool.invoke(new Balls(engine, 0, tasks));
+
+        // Merge in the order of the single threaded loop, which changes as balls leave play
+        for (int i = 0; i < balls.activeCount; ) {
+            int id = balls.active[i];
+            if (speculated[id] && stillValid(engine, id)) {
+                balls.commit(engine, id, workers[task[id]], bounceFrom[id], bounceTo[id], captureHole[id]);
+            }
+            else {
+                if (speculated[id]) {
+                    restore(balls, id);
+                    redone++;
+                }
+                balls.update(engine, id);
+            }
+            if (i < balls.activeCount && balls.active[i] == id) {
+                i++; // Otherwise the ball left play and the last ball took its place, so merge that one next
+            }
+        }
+
+        for (int i = 0; i < tasks; i++) {
+            workers[i].clear();
+        }
+    }
+
+    /**
+     * Make room in the records for every ball of the store.
+     * @param balls The store of the balls being updated.
+    */
+    private void prepare(BallStore balls) {
+        int capacity = balls.x.length;
+        if (speculated.length < capacity) {
+            speculated = Arrays.copyOf(speculated, capacity);
+            task = Arrays.copyOf(task, capacity);
+            bounceFrom = Arrays.copyOf(bounceFrom, capacity);
+            bounceTo = Arrays.copyOf(bounceTo, capacity);
+            captureHole = Arrays.copyOf(captureHole, capacity);
+            startX = Arrays.copyOf(startX, capacity);
+            startY = Arrays.copyOf(startY, capacity);
+            startXVel = Arrays.copyOf(startXVel, capacity);
+            startYVel = Arrays.copyOf(startYVel, capacity);
+            startSize = Arrays.copyOf(startSize, capacity);
+            startColour = Arrays.copyOf(startColour, capacity);
+        }
+    }
+
+    /**
+     * Update the balls at a range of positions in play with a deferred worker.
+     * @param engine The game engine the balls belong to.
+     * @param t The task, which decides the positions and the worker.
+    */
+    private void speculate(GameEngine engine, int t) {
+        BallStore balls = engine.balls;
+        BallStore.Worker w = workers[t];
+        int end = Math.min(balls.activeCount, (t + 1) * BALLS_PER_TASK);
+        for (int i = t * BALLS_PER_TASK; i < end; i++) {
+            int id = balls.active[i];
+            speculated[id] = balls.spawned[id];
+            if (!speculated[id]) {
+                continue; // Spawning draws random numbers, so it waits for the merge
+            }
+            startX[id] = balls.x[id];
+            startY[id] = balls.y[id];
+            startXVel[id] = balls.xVel[id];
+            startYVel[id] = balls.yVel[id];
+            startSize[id] = balls.size[id];
+            startColour[id] = balls.colour[id];
+
+            w.ballFirst = w.bounceCount;
+            w.captureHole = -1;
+            balls.update(engine, id, w);
+            task[id] = t;
+            bounceFrom[id] = w.ballFirst;
+            bounceTo[id] = w.bounceCount;
+            captureHole[id] = w.captureHole;
+        }
+    }
+
+    /**
+     * Whether every line a ball bounced off in its deferred update is still there.
+     * @param engine The game engine holding the lines.
+     * @param id The slot of the ball.
+     * @return true if the record can be applied as it is.
+    */
+    private boolean stillValid(GameEngine engine, int id) {
+        BallStore.Worker w = workers[task[id]];
+        for (int i = bounceFrom[id]; i < bounceTo[id]; i++) {
+            if (w.lines[i].index != engine.lineIndex) {
+                return false; // Removed by a ball merged earlier
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Put a ball back as it was before its deferred update.
+     * @param balls The store of the ball.
+     * @param id The slot of the ball.
+    */
+    private void restore(BallStore balls, int id) {
+        balls.x[id] = startX[id];
+        balls.y[id] = startY[id];
+        balls.xVel[id] = startXVel[id];
+        balls.yVel[id] = startYVel[id];
+        balls.size[id] = startSize[id];
+        balls.colour[id] = startColour[id];
+        balls.spawned[id] = true;
+        balls.sunk[id] = false;
+    }
+
+    /**
+     * Stop the threads. Further ticks are updated on the engine's thread.
+    */
+    public void close() {
+        pool.shutdown();
+        minBalls = Integer.MAX_VALUE;
+    }
+
+    /**
+     * A range of tasks, split in half until it is a single task.
+    */
+    private class Balls extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final GameEngine engine; // The game engine the balls belong to
+        private final int from; // First task of the range
+        private final int to; // One past the last task of the range
+
+        Balls(GameEngine engine, int from, int to) {
+            this.engine = engine;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    speculate(engine, from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Balls(engine, from, middle), new Balls(engine, middle, to));
+        }
+    }
+}
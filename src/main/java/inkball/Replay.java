@@ -0,0 +1,205 @@
+package inkball;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A recorded game, read from a {@link ReplayLog} file and played back
+ * without a window.
+ *
+ * The engine is created with the recorded seed, and each input event is
+ * applied just before the tick it was recorded on. Ticks run back to back
+ * with no frame timing, so a replay runs as fast as the simulation allows,
+ * which makes it suitable for timing the physics and for checking that an
+ * optimisation leaves the game state exactly the same.
+ *
+ * Responsibilities of the Replay class include:
+ * - Reading the header and events of a replay file.
+ * - Running an engine through the recorded input.
+ * - Summarising the final state as a checksum for comparisons.
+*/
+public class Replay {
+    public long seed; // Base seed of the recorded run
+    public int tickRate; // Tick rate of the recorded run
+    public int eventCount; // Number of events read
+    public long[] ticks = new long[64]; // Tick of each event
+    public byte[] types = new byte[64]; // Type of each event
+    public float[] xs = new float[64]; // Mouse x-coordinate of each event
+    public float[] ys = new float[64]; // Mouse y-coordinate of each event
+    public long endTick = -1; // Tick the run stopped on, or -1 if the file has no stop event
+
+    /**
+     * Read a replay file. A file cut short (e.g. the game was killed) is read up to its last whole event.
+     * @param path The path of the replay file.
+     * @return The recorded game.
+     * @throws IOException If the file can't be read or isn't a replay file.
+    */
+    public static Replay read(String path) throws IOException {
+        Replay replay = new Replay();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != ReplayLog.MAGIC || in.readByte() != ReplayLog.VERSION) {
+                throw new IOException("Not a replay file: " + path);
+            }
+            replay.seed = in.readLong();
+            replay.tickRate = in.readInt();
+
+            long tick = 0;
+            try {
+                while (true) {
+                    tick += readVarLong(in);
+                    int type = in.readByte();
+                    float x = 0;
+                    float y = 0;
+                    if (ReplayLog.hasPosition(type)) {
+                        x = in.readFloat();
+                        y = in.readFloat();
+                    }
+                    if (type == ReplayLog.STOP) {
+                        replay.endTick = tick;
+                        break;
+                    }
+                    replay.add(tick, type, x, y);
+                }
+            } catch (EOFException e) {
+                // No stop event, so the run ends with the last whole event
+            }
+        }
+        return replay;
+    }
+
+    /**
+     * Play the recorded input into an engine, running every tick of the recording.
+     * @param engine An engine created with the recorded seed and the same configuration.
+     * @return The number of ticks run.
+    */
+    public long play(GameEngine engine) {
+        long lastTick = (endTick >= 0) ? endTick : (eventCount > 0 ? ticks[eventCount - 1] : 0);
+        int next = 0;
+        long start = engine.tick;
+        while (engine.tick - start < lastTick) {
+            while (next < eventCount && ticks[next] == engine.tick - start) {
+                apply(engine, next++);
+            }
+            engine.step();
+        }
+        while (next < eventCount) {
+            apply(engine, next++); // Input after the last tick
+        }
+        return engine.tick - start;
+    }
+
+    /**
+     * Checksum of the state that matters to play, for comparing two runs bit for bit.
+     * @param engine The engine to summarise.
+     * @return The checksum.
+    */
+    public static long checksum(GameEngine engine) {
+        BallStore balls = engine.balls;
+        long hash = 17;
+        for (int i = 0; i < balls.count; i++) {
+            hash = hash * 31 + Float.floatToIntBits(balls.x[i]);
+            hash = hash * 31 + Float.floatToIntBits(balls.y[i]);
+            hash = hash * 31 + Float.floatToIntBits(balls.xVel[i]);
+            hash = hash * 31 + Float.floatToIntBits(balls.yVel[i]);
+            hash = hash * 31 + balls.colour[i];
+            hash = hash * 31 + (balls.spawned[i] ? 1 : 0) + (balls.sunk[i] ? 2 : 0);
+        }
+        for (int i = 0; i < balls.activeCount; i++) {
+            hash = hash * 31 + balls.active[i];
+        }
+        for (int i = 0; i < balls.queueCount; i++) {
+            hash = hash * 31 + balls.queued(i);
+        }
+        hash = hash * 31 + engine.currScore;
+        hash = hash * 31 + engine.levelToload;
+        hash = hash * 31 + engine.frameCounter;
+        hash = hash * 31 + engine.lines.size();
+        return hash;
+    }
+
+    /**
+     * Apply one recorded event to an engine.
+     * @param engine The engine to apply the event to.
+     * @param i The index of the event.
+    */
+    private void apply(GameEngine engine, int i) {
+        switch (types[i]) {
+            case ReplayLog.ERASE_LINE: engine.eraseLine(xs[i], ys[i]); break;
+            case ReplayLog.START_LINE: engine.startLine(xs[i], ys[i]); break;
+            case ReplayLog.EXTEND_LINE: engine.extendLine(xs[i], ys[i]); break;
+            case ReplayLog.END_LINE: engine.endLine(); break;
+            case ReplayLog.TOGGLE_PAUSE: engine.togglePause(); break;
+            case ReplayLog.RESTART_LEVEL: engine.restartLevel(); break;
+            case ReplayLog.RESTART_GAME: engine.restartGame(); break;
+        }
+    }
+
+    /**
+     * Add an event to the end of the recording.
+     * @param tick The tick of the event.
+     * @param type The type of the event.
+     * @param x The mouse x-coordinate.
+     * @param y The mouse y-coordinate.
+    */
+    public void add(long tick, int type, float x, float y) {
+        if (eventCount == ticks.length) {
+            ticks = Arrays.copyOf(ticks, eventCount * 2);
+            types = Arrays.copyOf(types, eventCount * 2);
+            xs = Arrays.copyOf(xs, eventCount * 2);
+            ys = Arrays.copyOf(ys, eventCount * 2);
+        }
+        ticks[eventCount] = tick;
+        types[eventCount] = (byte) type;
+        xs[eventCount] = x;
+        ys[eventCount] = y;
+        eventCount++;
+    }
+
+    /**
+     * Read a number written by {@link ReplayLog} in 7-bit groups.
+     * @param in The stream to read from.
+     * @return The number.
+     * @throws IOException If the stream ends or can't be read.
+    */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Play a replay file without a window and print how long it took and the final state.
+     * @param configPath The configuration the replay was recorded with.
+     * @param replayPath The replay file.
+    */
+    public static void runHeadless(String configPath, String replayPath) {
+        Replay replay;
+        try {
+            replay = read(replayPath);
+        } catch (IOException e) {
+            System.out.println("Error reading replay file");
+            e.printStackTrace();
+            return;
+        }
+        GameEngine engine = new GameEngine(configPath, replay.seed);
+        if (engine.tickRate != replay.tickRate) {
+            System.out.println("Warning: replay was recorded at " + replay.tickRate + " ticks per second, config runs at " + engine.tickRate);
+        }
+        long start = System.nanoTime();
+        long ticks = replay.play(engine);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Replayed %d events over %d ticks in %.3f s (%.0f ticks/s)%n", replay.eventCount, ticks, seconds, ticks / Math.max(seconds, 1e-9));
+        System.out.printf("Level %d, score %d, checksum %016x%n", engine.levelToload, engine.currScore, checksum(engine));
+        engine.close();
+    }
+}
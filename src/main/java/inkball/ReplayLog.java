@@ -0,0 +1,137 @@
+package inkball;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * An append-only binary log of player input, written while a game is played.
+ *
+ * The file starts with a header holding the run's seed and tick rate. Each
+ * input event after it takes the ticks since the previous event (as a
+ * variable-length number, usually one byte), the event type, and for mouse
+ * events the position as two floats. Together with the seed this is enough
+ * for {@link Replay} to play the game again tick for tick.
+ *
+ * Events are buffered and handed to the file at most once a second of play
+ * and when the log is closed. A game that is killed loses the input since
+ * the last flush, and {@link Replay} reads such a file up to its last whole
+ * event.
+ *
+ * Responsibilities of the ReplayLog class include:
+ * - Writing the header of a new replay file.
+ * - Appending each input event with the tick it happened on.
+ * - Marking the tick the run stopped on when it is closed.
+*/
+public class ReplayLog {
+    // File format
+    public static final int MAGIC = 0x494B5250; // "IKRP"
+    public static final int VERSION = 1;
+
+    // Event types
+    public static final int STOP = 0; // The run ended (last event of a complete file)
+    public static final int ERASE_LINE = 1;
+    public static final int START_LINE = 2;
+    public static final int EXTEND_LINE = 3;
+    public static final int END_LINE = 4;
+    public static final int TOGGLE_PAUSE = 5;
+    public static final int RESTART_LEVEL = 6;
+    public static final int RESTART_GAME = 7;
+
+    private DataOutputStream out; // Stream of the replay file, null once closed or after an error
+    private long lastTick; // Tick of the previous event
+    private final int tickRate; // Ticks per second of the run, for timing flushes
+    private long flushTick; // Tick the buffered events were last handed to the file
+
+    /**
+     * Constructor for the ReplayLog object, creating the file and writing its header.
+     * @param path The path of the replay file.
+     * @param seed The base seed of the run.
+     * @param tickRate The tick rate of the run.
+    */
+    public ReplayLog(String path, long seed, int tickRate) {
+        this.tickRate = tickRate;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(seed);
+            out.writeInt(tickRate);
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("Error creating replay file");
+            e.printStackTrace();
+            out = null;
+        }
+    }
+
+    /**
+     * Whether an event type carries a mouse position.
+     * @param type The event type.
+     * @return true if the event has a position.
+    */
+    public static boolean hasPosition(int type) {
+        return type == ERASE_LINE || type == START_LINE || type == EXTEND_LINE;
+    }
+
+    /**
+     * Append an input event.
+     * @param tick The tick the event happened on.
+     * @param type The event type.
+     * @param x The x-coordinate of the mouse, for mouse events.
+     * @param y The y-coordinate of the mouse, for mouse events.
+    */
+    public void record(long tick, int type, float x, float y) {
+        if (out == null) {
+            return;
+        }
+        try {
+            writeVarLong(tick - lastTick);
+            lastTick = tick;
+            out.writeByte(type);
+            if (hasPosition(type)) {
+                out.writeFloat(x);
+                out.writeFloat(y);
+            }
+            if (tick - flushTick >= tickRate) {
+                out.flush(); // At most once a second of play, so recording costs no write per event
+                flushTick = tick;
+            }
+        } catch (IOException e) {
+            System.out.println("Error writing replay file");
+            e.printStackTrace();
+            out = null;
+        }
+    }
+
+    /**
+     * Mark the end of the run and close the file.
+     * @param tick The tick the run stopped on.
+    */
+    public void close(long tick) {
+        if (out == null) {
+            return;
+        }
+        record(tick, STOP, 0, 0);
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.out.println("Error closing replay file");
+            e.printStackTrace();
+        }
+        out = null;
+    }
+
+    /**
+     * Write a non-negative number in 7-bit groups, low group first, with the top bit set on all but the last byte.
+     * @param value The number to write.
+    */
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
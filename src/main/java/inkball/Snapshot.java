@@ -0,0 +1,278 @@
+package inkball;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Saves and loads the full state of a game in progress in a compact binary form.
+ *
+ * A snapshot holds everything a level needs to carry on exactly where it
+ * was: the timers, score and counters of the engine, the state of its
+ * random numbers, the tiles of the board, every ball with its place in the
+ * queue or in play, and every line segment. Things that can be rebuilt from
+ * these, such as the collision grid, the hole field and the line index, are
+ * built again when a snapshot is loaded rather than saved.
+ *
+ * Each class writes its own part straight into one reused buffer, which is
+ * handed to the channel whenever it fills, and reads its part back the same
+ * way, so saving creates no objects at all and loading only creates the
+ * board, the ball store and the lines themselves. Numbers are written as
+ * they are stored, except the tiles, which are run-length encoded along each
+ * row as most of a board is floor or long runs of wall: a snapshot of a
+ * normal level is a few kilobytes.
+ *
+ * The format starts with {@link #MAGIC} and {@link #VERSION}; the version is
+ * changed whenever the layout changes, and snapshots of other versions are
+ * refused.
+ *
+ * Responsibilities of the Snapshot class include:
+ * - Writing and checking the header of a snapshot.
+ * - Buffering primitive values to and from a channel.
+ * - Asking the engine to write or read its state.
+*/
+public class Snapshot {
+    // File format
+    public static final int MAGIC = 0x494B534E; // "IKSN"
+    public static final int VERSION = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16; // Bytes held before they are handed to the channel
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE); // Reused for every snapshot
+    private WritableByteChannel out; // Channel being written to, while saving
+    private ReadableByteChannel in; // Channel being read from, while loading
+
+    public long bytes; // Size of the last snapshot saved or loaded
+
+    /**
+     * Write the state of a game to a channel.
+     * @param engine The engine to save.
+     * @param channel Where to write the snapshot. It is not closed.
+     * @throws IOException If the channel can't be written.
+    */
+    public void save(GameEngine engine, WritableByteChannel channel) throws IOException {
+        out = channel;
+        bytes = 0;
+        buffer.clear();
+        try {
+            putInt(MAGIC);
+            putByte(VERSION);
+            engine.writeState(this);
+            flush();
+        } finally {
+            out = null;
+        }
+    }
+
+    /**
+     * Replace the state of a game with one read from a channel.
+     * The engine must run the configuration the snapshot was saved from, and
+     * must not be recording input: a replay starts from a seed and can't jump
+     * to a saved state, so loading is refused while recording. If the
+     * snapshot turns out to be damaged part way through, the game in progress
+     * is left as it was.
+     * @param engine The engine to load into.
+     * @param channel Where to read the snapshot from. It is not closed.
+     * @throws IOException If the engine is recording, or the channel can't be read or doesn't hold a snapshot of this version.
+    */
+    public void load(GameEngine engine, ReadableByteChannel channel) throws IOException {
+        if (engine.recorder != null) {
+            throw new IOException("Can't load a snapshot while recording input");
+        }
+        in = channel;
+        bytes = 0;
+        buffer.clear();
+        buffer.flip(); // Nothing read yet
+        try {
+            if (getInt() != MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            int version = getByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            engine.readState(this);
+        } finally {
+            bytes -= buffer.remaining(); // Read ahead but not used
+            in = null;
+        }
+    }
+
+    // Writing
+
+    /**
+     * Make room for a number of bytes, handing what is buffered to the channel if needed.
+     * @param count The number of bytes about to be written.
+     * @throws IOException If the channel can't be written.
+    */
+    private void room(int count) throws IOException {
+        if (buffer.remaining() < count) {
+            flush();
+        }
+    }
+
+    // Hand everything buffered to the channel
+    private void flush() throws IOException {
+        buffer.flip();
+        bytes += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    void putByte(int value) throws IOException {
+        room(1);
+        buffer.put((byte) value);
+    }
+
+    void putInt(int value) throws IOException {
+        room(4);
+        buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException {
+        room(8);
+        buffer.putLong(value);
+    }
+
+    void putFloat(float value) throws IOException {
+        room(4);
+        buffer.putFloat(value);
+    }
+
+    /**
+     * Write a non-negative number in as few bytes as it needs, seven bits at a time.
+     * @param value The number.
+     * @throws IOException If the channel can't be written.
+    */
+    void putVarInt(int value) throws IOException {
+        room(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Write the first values of an array.
+     * @param values The array.
+     * @param count The number of values to write.
+     * @throws IOException If the channel can't be written.
+    */
+    void putFloats(float[] values, int count) throws IOException {
+        for (int i = 0; i < count; ) {
+            room(4);
+            int end = Math.min(count, i + buffer.remaining() / 4);
+            for (; i < end; i++) {
+                buffer.putFloat(values[i]);
+            }
+        }
+    }
+
+    // Reading
+
+    /**
+     * Make sure a number of bytes are buffered, reading more from the channel if needed.
+     * @param count The number of bytes about to be read.
+     * @throws IOException If the channel can't be read or ends first.
+    */
+    private void fill(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < count) {
+            int read = in.read(buffer);
+            if (read < 0) {
+                throw new EOFException("Snapshot cut short");
+            }
+            bytes += read;
+        }
+        buffer.flip();
+    }
+
+    int getByte() throws IOException {
+        fill(1);
+        return buffer.get() & 0xFF;
+    }
+
+    int getInt() throws IOException {
+        fill(4);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        fill(8);
+        return buffer.getLong();
+    }
+
+    float getFloat() throws IOException {
+        fill(4);
+        return buffer.getFloat();
+    }
+
+    /**
+     * Read a number written by {@link #putVarInt}.
+     * @return The number.
+     * @throws IOException If the channel can't be read or the number is malformed.
+    */
+    int getVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = getByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed snapshot");
+    }
+
+    /**
+     * Read values into the start of an array.
+     * @param values The array.
+     * @param count The number of values to read.
+     * @throws IOException If the channel can't be read or ends first.
+    */
+    void getFloats(float[] values, int count) throws IOException {
+        for (int i = 0; i < count; ) {
+            fill(4);
+            int end = Math.min(count, i + buffer.remaining() / 4);
+            for (; i < end; i++) {
+                values[i] = buffer.getFloat();
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes left to read, so a damaged snapshot can be caught before it asks for more than it holds.
+     * @return The bytes buffered plus those left in the channel, or Long.MAX_VALUE if the channel's size isn't known.
+     * @throws IOException If the channel's size or position can't be read.
+    */
+    long available() throws IOException {
+        if (!(in instanceof SeekableByteChannel)) {
+            return Long.MAX_VALUE; // A stream, which can only be read to find out
+        }
+        SeekableByteChannel file = (SeekableByteChannel) in;
+        return buffer.remaining() + Math.max(0, file.size() - file.position());
+    }
+
+    /**
+     * Read a count and check it is within a limit, so a damaged snapshot can't ask for huge arrays.
+     * @param max The largest count allowed.
+     * @return The count.
+     * @throws IOException If the channel can't be read or the count is out of range.
+    */
+    int getCount(int max) throws IOException {
+        int count = getInt();
+        if (count < 0 || count > max) {
+            throw new IOException("Malformed snapshot");
+        }
+        return count;
+    }
+}
@@ -0,0 +1,76 @@
+package inkball;
+
+import java.util.function.Function;
+
+import processing.core.PImage;
+
+/**
+ * An array-indexed table of every sprite in the game.
+ *
+ * Sprites are looked up by a kind constant and a colour index instead of by
+ * building a file name, so drawing a frame creates no strings and does no
+ * hashing. Every sprite is loaded once when the table is created.
+ *
+ * Responsibilities of the SpriteTable class include:
+ * - Loading every sprite of every kind and colour at startup.
+ * - Looking up a sprite by kind and colour without allocating.
+*/
+public class SpriteTable {
+    // Sprite kinds
+    public static final int TILE = 0;
+    public static final int ENTRYPOINT = 1;
+    public static final int WALL = 2;
+    public static final int HOLE = 3;
+    public static final int ACEL = 4;
+    public static final int BALL = 5;
+
+    private static final String[] KIND_NAMES = {"tile", "entrypoint", "wall", "hole", "acel", "ball"}; // File name prefix of each kind
+    private static final boolean[] COLOURED = {false, false, true, true, true, true}; // Whether each kind has one sprite per colour
+
+    private final PImage[] table; // Sprite of each kind and colour, at kind * colour count + colour
+
+    /**
+     * Constructor for the SpriteTable object, loading every sprite.
+     * @param app The main App object used to load the images.
+    */
+    public SpriteTable(App app) {
+        this(app::getSprite);
+    }
+
+    /**
+     * Constructor for the SpriteTable object, loading every sprite with a given loader.
+     * @param loader Loads the image for a sprite name, such as "wall2".
+    */
+    public SpriteTable(Function<String, PImage> loader) {
+        int colours = App.COLOURS.length;
+        table = new PImage[KIND_NAMES.length * colours];
+        for (int kind = 0; kind < KIND_NAMES.length; kind++) {
+            for (int colour = 0; colour < colours; colour++) {
+                String name = COLOURED[kind] ? KIND_NAMES[kind] + colour : KIND_NAMES[kind];
+                if (App.class.getResource(name + ".png") != null) { // Not every colour exists for every kind (e.g. acel0)
+                    table[kind * colours + colour] = loader.apply(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a sprite by its kind and colour.
+     * @param kind The kind of sprite, one of the constants of this class.
+     * @param colour The colour index of the sprite, ignored for kinds without colours.
+     * @return The sprite, or null if the kind has no sprite of that colour.
+    */
+    public PImage get(int kind, int colour) {
+        return table[kind * App.COLOURS.length + colour];
+    }
+
+    /**
+     * Get a sprite by its kind and the colour digit used in level files and ball colours.
+     * @param kind The kind of sprite, one of the constants of this class.
+     * @param colour The colour as a digit character ('0' to '4').
+     * @return The sprite, or null if the kind has no sprite of that colour.
+    */
+    public PImage get(int kind, char colour) {
+        return get(kind, colour - '0');
+    }
+}
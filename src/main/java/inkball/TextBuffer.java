@@ -0,0 +1,125 @@
+package inkball;
+
+/**
+ * A reused buffer of characters that numbers and labels are written into
+ * for drawing, without formatting them into new strings every frame.
+ *
+ * Processing draws a range of a char array directly, so the top bar and
+ * the profiler overlay clear a buffer, append what they show and hand
+ * {@link #chars} and {@link #length} to text(). Anything appended once the
+ * buffer is full is dropped.
+ *
+ * Responsibilities of the TextBuffer class include:
+ * - Appending characters, strings and numbers without creating objects.
+ * - Padding to a column for simple tables.
+*/
+class TextBuffer {
+    final char[] chars; // Characters written so far, up to length
+    int length; // Characters used in the buffer
+
+    /**
+     * Constructor for the TextBuffer object.
+     * @param capacity The most characters the buffer holds.
+    */
+    TextBuffer(int capacity) {
+        chars = new char[capacity];
+    }
+
+    /**
+     * Empty the buffer.
+     * @return This buffer.
+    */
+    TextBuffer clear() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * Append a character.
+     * @param c The character.
+     * @return This buffer.
+    */
+    TextBuffer append(char c) {
+        if (length < chars.length) {
+            chars[length++] = c;
+        }
+        return this;
+    }
+
+    /**
+     * Append the characters of a string.
+     * @param s The string.
+     * @return This buffer.
+    */
+    TextBuffer append(String s) {
+        for (int i = 0; i < s.length() && length < chars.length; i++) {
+            chars[length++] = s.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Append a whole number in decimal, with a minus sign if it is negative.
+     * @param value The number.
+     * @return This buffer.
+    */
+    TextBuffer append(int value) {
+        return append((long) value);
+    }
+
+    /**
+     * Append a whole number in decimal, with a minus sign if it is negative.
+     * @param value The number.
+     * @return This buffer.
+    */
+    TextBuffer append(long value) {
+        if (value < 0) {
+            append('-');
+        }
+        int start = length;
+        do {
+            if (length == chars.length) {
+                break;
+            }
+            chars[length++] = (char) ('0' + Math.abs(value % 10)); // Negative remainders, so Long.MIN_VALUE needs no negating
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) { // Digits were written backwards
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        return this;
+    }
+
+    /**
+     * Append a number rounded to two decimal places, with a minus sign if it is negative.
+     * @param value The number.
+     * @return This buffer.
+    */
+    TextBuffer appendHundredths(float value) {
+        long hundredths = Math.round(Math.abs(value) * 100.0);
+        if (value < 0 && hundredths != 0) {
+            append('-'); // Nothing that rounds to zero gets a sign
+        }
+        append(hundredths / 100);
+        append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            append('0');
+        }
+        return append(fraction);
+    }
+
+    /**
+     * Append spaces up to a column.
+     * @param column The length to pad to.
+     * @return This buffer.
+    */
+    TextBuffer pad(int column) {
+        while (length < column && length < chars.length) {
+            chars[length++] = ' ';
+        }
+        return this;
+    }
+}
@@ -1,93 +1,111 @@
 package inkball;
 
+import processing.core.PGraphics;
 import processing.core.PImage;
 
 /**
  * Represents a tile on the game board in the Inkball game.
- * 
- * A Tile can represent different game elements such as walls, holes, 
- * entry points, and balls. Each tile is identified by a type, 
- * which determines its behavior and appearance in the game.
- * 
+ *
+ * A Tile can represent different game elements such as walls, holes,
+ * entry points, and balls. Each tile is identified by a type character,
+ * which determines its behavior and appearance in the game. The characters
+ * themselves are kept in a {@link TileMap}; this class holds what the
+ * characters mean.
+ *
  * Responsibilities of the Tile class include:
- * - Storing the type and position of the tile.
- * - Drawing the tile on the game board.
- * - Handling specific behaviors based on the tile type, such as 
- *   spawning balls or defining entry points.
+ * - Drawing a tile of the board.
+ * - Choosing the sprite based on the tile type, such as walls,
+ *   holes, entry points and accelerators.
 */
 public class Tile {
-    // Tile properties
-    public char type; // Type of the tile, represented by a character
-    public int x; // X index of the tile on the board
-    public int y; // Y index of the tile on the board
+    public static final char HOLE_FLAG = 'E'; // Special flag for tiles that are part of a hole
 
-    private char HOLE_FLAG = 'E'; // Special flag for tiles that are part of a hole
-    private boolean spawned = false; // Flag to track whether a ball has been spawned on this tile
+    private Tile() {
+    }
+
+    /**
+        * Draw a tile into the board layer.
+        * @param app The PApplet object holding the sprites.
+        * @param layer The offscreen layer the board is drawn into.
+        * @param board The board the tile is on.
+        * @param x The x index of the tile.
+        * @param y The y index of the tile.
+        * @param drawX The x position to draw the tile at in the layer.
+        * @param drawY The y position to draw the tile at in the layer.
+        * @return boolean Whether the tile needs to be skipped (e.g., if it spans multiple cells).
+    */
+    public static boolean draw(App app, PGraphics layer, TileMap board, int x, int y, float drawX, float drawY) {
+        SpriteTable sprites = app.spriteTable;
+        char type = board.get(x, y);
+        boolean skipNext = spansTwoCells(type); // Flag to determine if the next tile should not be checked
+
+        // Draw the skipped tile as blank
+        if (skipNext) {
+            layer.image(sprites.get(SpriteTable.TILE, 0), drawX + App.CELLSIZE, drawY); // draws tile for next then skips it to avoid number being read as wall type
+        }
+
+         // If the tile isn't a part of a hole, draw it at its position
+        if (type != HOLE_FLAG) {
+            layer.image(sprite(sprites, board, x, y), drawX, drawY);
+        }
+
+        return skipNext;
+    }
 
     /**
-        * Constructor for the Tile object.
-        * @param type The character representing the type of the tile ('B', 'S', etc.).
-        * @param x The x-coordinate of the tile on the board.
-        * @param y The y-coordinate of the tile on the board.
+        * Whether a tile uses the cell to its right for its colour or direction, so that cell isn't a tile of its own.
+        * @param type The type of the tile.
+        * @return boolean true for holes, balls and accelerators.
     */
-    public Tile(char type, int x, int y) {
-        this.type = type;
-        this.x = x;
-        this.y = y;
+    public static boolean spansTwoCells(char type) {
+        return type == 'H' || type == 'B' || type == 'A';
     }
 
     /**
-        * Draw the tile on the board.
-        * @param app The PApplet object used for drawing.
-        * @return boolean Whether the tile needs to be skipped (e.g., if it spans multiple cells).
+        * Find the first tile to draw so that a row drawn from a given column starts on a whole tile.
+        * A column holding the colour or direction of the tile to its left belongs to that tile.
+        * @param board The board to read.
+        * @param x The first column wanted.
+        * @param y The row.
+        * @return int The column to start drawing from.
     */
-    public boolean draw(App app) {
+    public static int tileStart(TileMap board, int x, int y) {
+        return (x > 0 && spansTwoCells(board.get(x - 1, y))) ? x - 1 : x;
+    }
+
+    /**
+        * Choose the sprite for a tile based on its type.
+        * @param sprites The sprite table to take the sprite from.
+        * @param board The board the tile is on, for tiles that read their colour or direction from the next cell.
+        * @param x The x index of the tile.
+        * @param y The y index of the tile.
+        * @return PImage The sprite to draw for the tile.
+    */
+    public static PImage sprite(SpriteTable sprites, TileMap board, int x, int y) {
+        char type = board.get(x, y);
+
         // Load the default tile sprite
-        PImage tile = app.getSprite("tile");
-        boolean skipNext = false; // Flag to determine if the next tile should not be checked
+        PImage tile = sprites.get(SpriteTable.TILE, 0);
 
         // If the tile type is a digit load the corresponding wall sprite
         if (Character.isDigit(type)) {
-            tile = app.getSprite("wall" + type);
+            tile = sprites.get(SpriteTable.WALL, type);
         }
         // Switch on the tile type to determine specific behaviors
         switch (type) {
             case 'X':
-                tile = app.getSprite("wall0");               
+                tile = sprites.get(SpriteTable.WALL, 0);
                 break;
             case 'S':
-                tile = app.getSprite("entrypoint");
+                tile = sprites.get(SpriteTable.ENTRYPOINT, 0);
                 break;
             case 'H':
-                tile = app.getSprite("hole" + app.board[y][x+1].type);
-                skipNext = true;
-                app.board[y+1][x].type = HOLE_FLAG; // won't draw these tiles
-                app.board[y+1][x+1].type = HOLE_FLAG;
-                break;
-            case 'B':
-                if (!spawned) {
-                    app.balls[app.extraBallCount] = new Ball(app.board[y][x+1].type);
-                    app.balls[app.extraBallCount].spawn(x, y);
-                    app.extraBallCount++;
-                }
-                skipNext = true;
+                tile = sprites.get(SpriteTable.HOLE, board.get(x + 1, y));
                 break;
             case 'A':
-                tile = app.getSprite("acel" + app.board[y][x+1].type);
-                skipNext = true;
-        }
-        // Draw the skipped tile as blank
-        if (skipNext) {
-            app.image(app.getSprite("tile"), (x+1) * App.CELLSIZE, y * App.CELLSIZE + App.TOPBAR); // draws tile for next then skips it to avoid number being read as wall type
-        }
-
-         // If the tile isn't a part of a hole, draw it at its position
-        if (type != 'E') {
-            app.image(tile, x * App.CELLSIZE, y * App.CELLSIZE + App.TOPBAR);
+                tile = sprites.get(SpriteTable.ACEL, board.get(x + 1, y));
+                break;
         }
-        spawned = true;
-
-        return skipNext;
+        return tile;
     }
-    
-}
\ No newline at end of file
+}
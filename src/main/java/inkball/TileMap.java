@@ -0,0 +1,160 @@
+package inkball;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The tile characters of a board of any size, stored in square chunks.
+ *
+ * The board is split into chunks of {@link #CHUNK_SIZE} by {@link #CHUNK_SIZE}
+ * tiles, each a small byte array, so the tiles of a region of the board sit
+ * close together in memory and a large level only pays for the parts that
+ * have something on them: a chunk that is entirely empty floor is never
+ * allocated. Reading a tile outside the board gives empty floor and writing
+ * one is ignored, so code looking at a tile's neighbours needs no bounds
+ * checks of its own.
+ *
+ * Responsibilities of the TileMap class include:
+ * - Storing the tile character of every cell of a level.
+ * - Allocating chunks only once something other than floor is written to them.
+ * - Writing and reading the tiles as part of a {@link Snapshot}.
+*/
+public class TileMap {
+    public static final int CHUNK_SHIFT = 4; // Log2 of the chunk size
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // Tiles across and down a chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    public static final char EMPTY = ' '; // Floor, the tile of unallocated chunks and of everything off the board
+    public static final int MAX_TILES = 1 << 22; // Most tiles a board read from a snapshot may have, far beyond any level
+
+    public final int width; // Number of tiles across
+    public final int height; // Number of tiles down
+    private final int chunksAcross; // Number of chunks across
+    private final byte[][] chunks; // Tiles of each chunk at (y % CHUNK_SIZE) * CHUNK_SIZE + x % CHUNK_SIZE, null while all floor
+
+    public int chunkCount; // Number of chunks allocated
+
+    /**
+     * Constructor for the TileMap object, with every tile empty floor.
+     * @param width The number of tiles across.
+     * @param height The number of tiles down.
+    */
+    public TileMap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        chunksAcross = (width + CHUNK_MASK) >> CHUNK_SHIFT;
+        int chunksDown = (height + CHUNK_MASK) >> CHUNK_SHIFT;
+        chunks = new byte[chunksAcross * chunksDown][];
+    }
+
+    /**
+     * Constructor for the TileMap object, filled from a level's layout.
+     * @param level The level to copy the tiles of.
+    */
+    public TileMap(LevelData level) {
+        this(level.width, level.height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                set(x, y, level.tile(x, y));
+            }
+        }
+    }
+
+    /**
+     * Get the tile character at a position.
+     * @param x The x index of the tile.
+     * @param y The y index of the tile.
+     * @return The tile character, or {@link #EMPTY} if the position is off the board.
+    */
+    public char get(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return EMPTY;
+        }
+        byte[] chunk = chunks[(y >> CHUNK_SHIFT) * chunksAcross + (x >> CHUNK_SHIFT)];
+        if (chunk == null) {
+            return EMPTY;
+        }
+        return (char) (chunk[((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK)] & 0xFF);
+    }
+
+    /**
+     * Set the tile character at a position. Positions off the board are ignored.
+     * @param x The x index of the tile.
+     * @param y The y index of the tile.
+     * @param type The new tile character.
+    */
+    public void set(int x, int y, char type) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+        int index = (y >> CHUNK_SHIFT) * chunksAcross + (x >> CHUNK_SHIFT);
+        byte[] chunk = chunks[index];
+        if (chunk == null) {
+            if (type == EMPTY) {
+                return; // Already floor
+            }
+            chunk = new byte[CHUNK_SIZE * CHUNK_SIZE];
+            Arrays.fill(chunk, (byte) EMPTY);
+            chunks[index] = chunk;
+            chunkCount++;
+        }
+        chunk[((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK)] = (byte) type;
+    }
+
+    /**
+     * Write the size and tiles of the board to a snapshot, as runs of the same tile along each row.
+     * @param out The snapshot being saved.
+     * @throws IOException If the snapshot can't be written.
+    */
+    void write(Snapshot out) throws IOException {
+        out.putInt(width);
+        out.putInt(height);
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                char type = get(x, y);
+                int run = 1;
+                while (x + run < width && get(x + run, y) == type) {
+                    run++;
+                }
+                out.putVarInt(run);
+                out.putByte(type);
+                x += run;
+            }
+        }
+    }
+
+    /**
+     * Read a board written by {@link #write}.
+     * Runs never cross the end of a row, so every row takes at least two
+     * bytes; the size is checked against that and {@link #MAX_TILES} before
+     * the board is built, so a damaged snapshot can't ask for a huge board.
+     * @param in The snapshot being loaded.
+     * @return The board.
+     * @throws IOException If the snapshot can't be read or is damaged.
+    */
+    static TileMap read(Snapshot in) throws IOException {
+        int width = in.getCount(MAX_TILES);
+        int height = in.getCount(MAX_TILES);
+        if ((long) width * height > MAX_TILES || (width > 0 && 2L * height > in.available())) {
+            throw new IOException("Malformed snapshot");
+        }
+        TileMap board = new TileMap(width, height);
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                int run = in.getVarInt();
+                char type = (char) in.getByte();
+                if (run <= 0 || run > width - x) {
+                    throw new IOException("Malformed snapshot");
+                }
+                if (type != EMPTY) {
+                    for (int j = x; j < x + run; j++) {
+                        board.set(j, y, type);
+                    }
+                }
+                x += run;
+            }
+        }
+        return board;
+    }
+}
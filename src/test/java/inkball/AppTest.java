@@ -4,14 +4,11 @@ import org.junit.jupiter.api.Test;
 
 
 import processing.core.PApplet;
-import processing.core.PVector;
 import processing.event.KeyEvent;
 import processing.event.MouseEvent;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.util.Arrays;
-
 import org.junit.jupiter.api.BeforeEach;
 
 public class AppTest {
@@ -28,10 +25,9 @@ public class AppTest {
             Thread.yield();
         }
         app.setup();
-        app.setBallCount = 1;
-        Ball testBall = new Ball('0');
-        app.balls = Arrays.copyOfRange(app.balls, 0, 1);
-        app.balls[0] = testBall;
+        app.engine.setBallCount = 1;
+        app.engine.balls = new BallStore(1);
+        app.engine.balls.add('0');
         app.delay(1000);        
     }
 
@@ -40,31 +36,31 @@ public class AppTest {
         // pause testing
         KeyEvent keyEvent = new KeyEvent(app, 0, 0, 0, ' ', 32);
         app.keyReleased(keyEvent);
-        assertEquals(true, app.paused);
+        assertEquals(true, app.engine.paused);
         app.keyReleased(keyEvent);
-        assertEquals(false, app.paused);
+        assertEquals(false, app.engine.paused);
 
         // reset testing
         keyEvent = new KeyEvent(app, 0, 0, 0, 'r', 114);
         app.keyReleased(keyEvent);
-        assertEquals(0, app.elapsedTime);
+        assertEquals(0, app.engine.elapsedTime);
 
-        app.levelOver = true;
+        app.engine.levelOver = true;
         keyEvent = new KeyEvent(app, 0, 0, 0, 'r', 114);
         app.keyReleased(keyEvent);
-        assertEquals(0, app.elapsedTime);
+        assertEquals(0, app.engine.elapsedTime);
 
-        app.levelOver = true;
-        app.levelToload = app.levelCount;
+        app.engine.levelOver = true;
+        app.engine.levelToload = app.engine.levelCount;
         keyEvent = new KeyEvent(app, 0, 0, 0, 'r', 114);
         app.keyReleased(keyEvent);
-        assertEquals(0, app.elapsedTime);
+        assertEquals(0, app.engine.elapsedTime);
 
         // keypress
         app.keyPressed(keyEvent);
 
         // ctrl
-        app.levelOver = false;
+        app.engine.levelOver = false;
         // press
         keyEvent = new KeyEvent(app, 0, 0, 0, '?', App.CONTROL);
         app.keyCode = App.CONTROL;
@@ -88,7 +84,7 @@ public class AppTest {
         mouseEvent = new MouseEvent(app, 0, 0, 0, 100, 100, App.LEFT, 0);
         app.mouseButton = App.LEFT;
         app.mousePressed(mouseEvent);
-        assertEquals(100, app.prevX);
+        assertEquals(100, app.engine.prevX);
 
         // Right mouse
         // No line near
@@ -100,41 +96,41 @@ public class AppTest {
         Line line = new Line();
         line.addSegment(3*App.CELLSIZE, 2*App.CELLSIZE, 3*App.CELLSIZE, 5*App.CELLSIZE);
 
-        app.lines.add(line);
+        app.engine.addLine(line);
         app.mouseX = 3*App.CELLSIZE;
         app.mouseY = 4*App.CELLSIZE;
         mouseEvent = new MouseEvent(app, 0, 0, 0, 3*App.CELLSIZE, 4*App.CELLSIZE, PApplet.RIGHT, 0);
         app.mousePressed(mouseEvent);
-        assertEquals(1, app.lines.size());
+        assertEquals(1, app.engine.lines.size());
 
         // game paused
-        app.paused = true;
+        app.engine.paused = true;
         app.mousePressed(mouseEvent);
 
         // level over
-        app.levelOver = true;
+        app.engine.levelOver = true;
         app.mousePressed(mouseEvent);
-        app.paused = false;
-        app.levelOver = false;
+        app.engine.paused = false;
+        app.engine.levelOver = false;
 
         // drag mouse
         mouseEvent = new MouseEvent(app, 0, 0, 0, 100, 100, App.LEFT, 0);
         app.mouseButton = App.LEFT;
         app.mouseDragged(mouseEvent);
 
-        app.paused = true;
+        app.engine.paused = true;
         mouseEvent = new MouseEvent(app, 0, 0, 0, 100, 100, App.LEFT, 0);
         app.mouseButton = App.LEFT;
         app.mouseDragged(mouseEvent);
 
-        app.levelOver = true;
+        app.engine.levelOver = true;
         mouseEvent = new MouseEvent(app, 0, 0, 0, 100, 100, App.LEFT, 0);
         app.mouseButton = App.LEFT;
         app.mouseDragged(mouseEvent);
 
         // mouse release
         app.mouseReleased(mouseEvent);
-        assertEquals(null, app.line);
+        assertEquals(null, app.engine.line);
     }
 
     @Test
@@ -144,84 +140,84 @@ public class AppTest {
         int spawnLocX = 3;
         int spawnLocY = 5;
         ball.spawn(spawnLocX, spawnLocY);
-        assertEquals(spawnLocX + ball.spawnOffset, ball.x);
+        assertEquals(spawnLocX + ball.getSpawnOffset(), ball.getX());
 
         // ball velocity
-        ball.draw(app);
-        assertEquals(spawnLocX + ball.spawnOffset + ball.xVel / App.CELLSIZE, ball.x);
+        ball.update(app.engine);
+        assertEquals(spawnLocX + ball.getSpawnOffset() + ball.getXVel() / App.CELLSIZE, ball.getX());
 
         // ball wall bounce
-        ball.xVel = -1;
-        ball.yVel = 0;
-        ball.x = 0.5f;
-        ball.y = 5;
-        ball.draw(app);
-        assertEquals(1, ball.xVel);
+        ball.setXVel(-1);
+        ball.setYVel(0);
+        ball.setX(0.5f);
+        ball.setY(5);
+        ball.update(app.engine);
+        assertEquals(1, ball.getXVel());
 
         // ball change colour
-        ball.x = 9;
-        ball.y = 0.5f;
-        ball.xVel = 0;
-        ball.yVel = -1;
-        ball.draw(app);
-        assertEquals('2', ball.colour);
+        ball.setX(9);
+        ball.setY(0.5f);
+        ball.setXVel(0);
+        ball.setYVel(-1);
+        ball.update(app.engine);
+        assertEquals('2', ball.getColour());
 
         // ball accelerate
         // right
-        ball.x = 3;
-        ball.y = 14;
-        ball.xVel = 0;
-        ball.yVel = 0;
-        ball.draw(app);
-        assertEquals(0.4f, ball.xVel);
+        ball.setX(3);
+        ball.setY(14);
+        ball.setXVel(0);
+        ball.setYVel(0);
+        ball.update(app.engine);
+        assertEquals(0.4f, ball.getXVel());
 
         // left
-        ball.x = 15;
-        ball.y = 8;
-        ball.xVel = 0;
-        ball.yVel = 0;
-        ball.draw(app);
-        assertEquals(-0.4f, ball.xVel);
+        ball.setX(15);
+        ball.setY(8);
+        ball.setXVel(0);
+        ball.setYVel(0);
+        ball.update(app.engine);
+        assertEquals(-0.4f, ball.getXVel());
         
         // up
-        ball.x = 15;
-        ball.y = 14;
-        ball.xVel = 0;
-        ball.yVel = 0;
-        ball.draw(app);
-        assertEquals(-0.4f, ball.yVel);
+        ball.setX(15);
+        ball.setY(14);
+        ball.setXVel(0);
+        ball.setYVel(0);
+        ball.update(app.engine);
+        assertEquals(-0.4f, ball.getYVel());
 
         // down
-        ball.x = 15;
-        ball.y = 3;
-        ball.xVel = 0;
-        ball.yVel = 0;
-        ball.draw(app);
-        assertEquals(0.4f, ball.yVel);
+        ball.setX(15);
+        ball.setY(3);
+        ball.setXVel(0);
+        ball.setYVel(0);
+        ball.update(app.engine);
+        assertEquals(0.4f, ball.getYVel());
 
         // avoiding detecting other numerical indicators as walls
         // hole
-        ball.x = 12;
-        ball.y = 5.5f;
-        ball.xVel = 0;
-        ball.yVel = 0;
-        ball.draw(app);
-        assertEquals(0, ball.xVel);
+        ball.setX(12);
+        ball.setY(5.5f);
+        ball.setXVel(0);
+        ball.setYVel(0);
+        ball.update(app.engine);
+        assertEquals(0, ball.getXVel());
 
         // default ball (B#)
-        ball.x = 7;
-        ball.y = 13;
-        ball.xVel = 0;
-        ball.yVel = 0;
-        ball.draw(app);
-        assertEquals(0, ball.xVel);
+        ball.setX(7);
+        ball.setY(13);
+        ball.setXVel(0);
+        ball.setYVel(0);
+        ball.update(app.engine);
+        assertEquals(0, ball.getXVel());
 
         // ball trying to reflect off wall wrong check
-        ball.x = 17.3f;
-        ball.y = 12;
-        ball.xVel = -0.1f;
-        ball.wallCollisionCheck(app, 0, ball.radius, ball.xVel, -1);
-        assertEquals(-0.1f, ball.xVel);
+        ball.setX(17.3f);
+        ball.setY(12);
+        ball.setXVel(-0.1f);
+        ball.wallCollisionCheck(app.engine, 0, ball.getRadius(), ball.getXVel(), -1);
+        assertEquals(-0.1f, ball.getXVel());
     }
 
     @Test
@@ -229,40 +225,40 @@ public class AppTest {
         // not close enough for anything
         Ball ball = new Ball('1');
         ball.spawn(11, 6);
-        app.board[6][11].type = 'H';
-        app.board[6][12].type = '0';
-        app.board[7][11].type = 'E';
-        app.board[6][12].type = 'E';
-        ball.holeCollsionCheck(app, 11, 6);
-        assertEquals(true, ball.spawned);
+        app.engine.setTile(11, 6, 'H');
+        app.engine.setTile(12, 6, '0');
+        app.engine.setTile(11, 7, 'E');
+        app.engine.setTile(12, 6, 'E');
+        ball.holeCollsionCheck(app.engine, 11, 6);
+        assertEquals(true, ball.isSpawned());
 
         // close enough for attraction - 1
-        ball.holeCollsionCheck(app, 11.5f, 6.5f);
-        assertEquals(true, ball.spawned);
+        ball.holeCollsionCheck(app.engine, 11.5f, 6.5f);
+        assertEquals(true, ball.isSpawned());
 
         // close enough for attraction - 2
-        ball.holeCollsionCheck(app, 11.65f, 6.65f);
-        assertEquals(true, ball.spawned);
+        ball.holeCollsionCheck(app.engine, 11.65f, 6.65f);
+        assertEquals(true, ball.isSpawned());
 
         // close enough for sink - wrong hole
-        ball.holeCollsionCheck(app, 11.8f, 6.8f);
-        assertEquals(false, ball.spawned);
+        ball.holeCollsionCheck(app.engine, 11.8f, 6.8f);
+        assertEquals(false, ball.isSpawned());
 
         // close enough for sink - right hole
         app.delay(100);
-        ball.x = 15;
-        ball.y = 1;
-        app.board[1][15].type = 'H';
-        app.board[1][16].type = '0';
-        app.board[2][15].type = 'E';
-        app.board[2][16].type = 'E';
-        ball.holeCollsionCheck(app, 15.8f, 1.8f);
-        assertEquals(true, ball.sunk);
+        ball.setX(15);
+        ball.setY(1);
+        app.engine.setTile(15, 1, 'H');
+        app.engine.setTile(16, 1, '0');
+        app.engine.setTile(15, 2, 'E');
+        app.engine.setTile(16, 2, 'E');
+        ball.holeCollsionCheck(app.engine, 15.8f, 1.8f);
+        assertEquals(true, ball.isSunk());
 
         // ball on E square
-        ball.x = 15;
-        ball.y = 2;
-        ball.holeCollsionCheck(app, 16.5f, 2.5f);
+        ball.setX(15);
+        ball.setY(2);
+        ball.holeCollsionCheck(app.engine, 16.5f, 2.5f);
     }
 
     @Test
@@ -276,10 +272,12 @@ public class AppTest {
     @Test
     public void levelsComplete() {
         // level complete
-        app.levelOver = true;
-        app.levelOver(app.levelOver);
-        app.elapsedTime = app.time + 1;
-        app.levelOver(app.levelOver);
+        app.engine.levelOver = true;
+        app.engine.updateLevelOver();
+        app.levelOver(app.engine.levelOver);
+        app.engine.elapsedTime = app.engine.time + 1;
+        app.engine.updateLevelOver();
+        app.levelOver(app.engine.levelOver);
     }
 
     @Test
@@ -292,21 +290,21 @@ public class AppTest {
         line.draw(app);
 
         // right clicking off line
-        PVector[] clickSegment = line.isNearLine(10*App.CELLSIZE, 10*App.CELLSIZE, 5);
-        assertEquals(null, clickSegment);
+        int clickSegment = line.isNearLine(10*App.CELLSIZE, 10*App.CELLSIZE, 5);
+        assertEquals(-1, clickSegment);
 
         // right clicking on line
         clickSegment = line.isNearLine(3*App.CELLSIZE, 4*App.CELLSIZE, 5);
-        assertEquals(line.lines.get(0), clickSegment);
+        assertEquals(0, clickSegment);
 
         // ball bouncing off line
-        app.lines.add(line);
+        app.engine.addLine(line);
         Ball ball = new Ball('0');
         ball.spawn(3, 2);
-        ball.xVel = 1;
-        ball.yVel = 0;
-        ball.draw(app);
-        assertEquals(-1, ball.xVel);
+        ball.setXVel(1);
+        ball.setYVel(0);
+        ball.update(app.engine);
+        assertEquals(-1, ball.getXVel());
     }
 
     @Test
@@ -315,13 +313,13 @@ public class AppTest {
         app.draw();
 
         // pause
-        app.paused = true;
+        app.engine.paused = true;
         app.draw();
-        app.paused = false;
+        app.engine.paused = false;
 
         // levelover
-        app.levelOver = true;
+        app.engine.levelOver = true;
         app.draw();
-        app.levelOver = false;
+        app.engine.levelOver = false;
     }
 }
\ No newline at end of file
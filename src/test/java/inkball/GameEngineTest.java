@@ -0,0 +1,684 @@
+package inkball;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.data.JSONObject;
+
+public class GameEngineTest {
+
+    private GameEngine engine;
+
+    @BeforeEach
+    public void setUp() {
+        // the engine runs without a window, so no sketch is started
+        engine = new GameEngine("config.json");
+    }
+
+    @Test
+    public void headlessStepping() {
+        // one second of ticks
+        for (int i = 0; i < engine.tickRate; i++) {
+            engine.step();
+        }
+        assertEquals(1, engine.elapsedTime);
+
+        // pre-set balls are in play from the first tick
+        assertTrue(engine.balls.spawned[0]);
+
+        // balls keep moving and spawning over a long run
+        for (int i = 0; i < engine.tickRate * 60; i++) {
+            engine.step();
+        }
+        assertTrue(engine.ballsToSpawn > 1);
+    }
+
+    @Test
+    public void pauseStopsClock() {
+        engine.togglePause();
+        engine.step();
+        assertEquals(0, engine.elapsedTime);
+        engine.togglePause();
+        engine.step();
+        assertEquals(1f / engine.tickRate, engine.elapsedTime);
+    }
+
+    @Test
+    public void fixedTimestep() {
+        // a slow frame is simulated as several ticks
+        assertEquals(3, engine.advance(3.0 / engine.tickRate));
+        assertEquals(3, engine.frameCounter);
+
+        // a fast frame is carried over until a whole tick has built up
+        assertEquals(0, engine.advance(0.4 / engine.tickRate));
+        assertEquals(0.4f, engine.interpolation(), 0.001f);
+        assertEquals(1, engine.advance(0.6 / engine.tickRate));
+
+        // very long frames are clamped
+        assertEquals((int) (GameEngine.MAX_FRAME_TIME * engine.tickRate), engine.advance(10), 1);
+    }
+
+    @Test
+    public void drawingAndErasing() {
+        engine.startLine(100, 100);
+        engine.extendLine(100, 200);
+        engine.endLine();
+        assertEquals(1, engine.lines.size());
+        assertNull(engine.line);
+
+        // erase away from the line
+        engine.eraseLine(300, 300);
+        assertEquals(1, engine.lines.size());
+
+        // erase on the line
+        engine.eraseLine(100, 150);
+        assertEquals(0, engine.lines.size());
+    }
+
+    @Test
+    public void lineIndexQueries() {
+        Line first = new Line();
+        first.addSegment(100, 100, 200, 100);
+        engine.addLine(first);
+
+        // segments added after the line is indexed are found too
+        Line second = new Line();
+        engine.addLine(second);
+        second.addSegment(150, 90, 150, 300);
+        second.addSegment(150, 300, 400, 300);
+
+        // overlapping lines resolve to the earliest drawn
+        assertSame(first, engine.lineIndex.query(150, 100, 5));
+        assertEquals(0, engine.lineIndex.hitSegment);
+        assertSame(second, engine.lineIndex.query(390, 302, 5));
+        assertEquals(1, engine.lineIndex.hitSegment);
+        assertNull(engine.lineIndex.query(300, 200, 5));
+
+        // removed lines are no longer found
+        engine.removeLine(first);
+        assertSame(second, engine.lineIndex.query(150, 100, 5));
+        assertEquals(0, engine.lineIndex.hitSegment);
+    }
+
+    @Test
+    public void packedLineSegments() {
+        // storage grows past its initial capacity
+        Line line = new Line();
+        for (int i = 0; i < 100; i++) {
+            line.addSegment(i * 10, 0, i * 10 + 5, 0);
+        }
+        assertEquals(100, line.size());
+        assertEquals(990, line.segmentX1(99));
+        assertEquals(50, line.isNearLine(502.5f, 3, 5));
+        assertEquals(-1, line.isNearLine(502.5f, 6, 5));
+
+        // zero-length segments are never near
+        Line dot = new Line();
+        dot.addSegment(10, 10, 10, 10);
+        assertEquals(-1, dot.isNearLine(10, 10, 5));
+        assertEquals(0, dot.size());
+    }
+
+    @Test
+    public void lineSimplification() {
+        // a slow drag along a gentle curve, with repeated positions where the mouse didn't move
+        engine.startLine(100, 300);
+        float[] xs = new float[300];
+        float[] ys = new float[300];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = 100 + i * 1.5f;
+            ys[i] = 300 + (float) Math.sin(i / 60.0) * 40;
+            engine.extendLine(xs[i], ys[i]);
+            if (i % 3 == 0) {
+                engine.extendLine(xs[i], ys[i]);
+            }
+        }
+        Line line = engine.line;
+        engine.endLine();
+        assertTrue(line.size() * 10 <= xs.length, "segments: " + line.size());
+        assertEquals(line.size(), engine.lineIndex.segmentCount);
+
+        // every mouse position stays within the tolerance of the line, and the index finds it there
+        for (int i = 0; i < xs.length; i++) {
+            assertTrue(line.isNearLine(xs[i], ys[i], (int) Line.TOLERANCE) != -1);
+            assertSame(line, engine.lineIndex.query(xs[i], ys[i] + 2, 5));
+        }
+        assertNull(engine.lineIndex.query(xs[150], ys[150] + 8, 5));
+
+        // on a faster drag, bounce normals turn by at most asin(2 * tolerance / length) of each mouse movement,
+        // as both ends of the movement lie within the tolerance of the segment that replaced it
+        Line fast = new Line();
+        for (int i = 0; i < 59; i++) {
+            fast.addSegment(xs[i * 5], ys[i * 5] * 3 - 600, xs[i * 5 + 5], ys[i * 5 + 5] * 3 - 600);
+        }
+        assertTrue(fast.size() < 59, "segments: " + fast.size());
+        for (int i = 0; i < 59; i++) {
+            float x1 = xs[i * 5];
+            float y1 = ys[i * 5] * 3 - 600;
+            float x2 = xs[i * 5 + 5];
+            float y2 = ys[i * 5 + 5] * 3 - 600;
+            double length = Math.hypot(x2 - x1, y2 - y1);
+            double bound = 2 * Line.TOLERANCE / length;
+            boolean covered = false;
+            for (int seg = 0; seg < fast.size() && !covered; seg++) {
+                if (fast.isSegmentNear(seg, x1, y1, (int) Line.TOLERANCE) && fast.isSegmentNear(seg, x2, y2, (int) Line.TOLERANCE)) {
+                    float sx = fast.segmentX2(seg) - fast.segmentX1(seg);
+                    float sy = fast.segmentY2(seg) - fast.segmentY1(seg);
+                    double sin = Math.abs(sx * (y2 - y1) - sy * (x2 - x1)) / (Math.hypot(sx, sy) * length);
+                    covered = sin <= bound + 1e-4 && sx * (x2 - x1) + sy * (y2 - y1) > 0;
+                }
+            }
+            assertTrue(covered, "movement " + i);
+        }
+
+        // sharp corners are kept
+        Line corner = new Line();
+        corner.addSegment(0, 0, 50, 0);
+        corner.addSegment(50, 0, 50, 50);
+        assertEquals(2, corner.size());
+    }
+
+    @Test
+    public void sweptCollisions() {
+        // a ball moving many cells per tick still bounces off a thin line
+        engine.startLine(10 * App.CELLSIZE, 10 * App.CELLSIZE + App.TOPBAR);
+        engine.extendLine(10 * App.CELLSIZE, 13 * App.CELLSIZE + App.TOPBAR);
+        engine.endLine();
+        Ball ball = new Ball('0');
+        ball.spawn(2, 11);
+        ball.setXVel(400);
+        ball.setYVel(0);
+        ball.update(engine);
+        assertEquals(-400, ball.getXVel(), 0.001f);
+        assertTrue(ball.getX() < 10);
+        assertEquals(0, engine.lines.size());
+
+        // and never leaves the board, however fast it goes
+        ball.setXVel(3000);
+        ball.setYVel(1700);
+        for (int i = 0; i < 200; i++) {
+            ball.update(engine);
+            assertTrue(ball.getX() >= 0 && ball.getX() <= engine.board.width, "x: " + ball.getX());
+            assertTrue(ball.getY() >= 0 && ball.getY() <= engine.board.height, "y: " + ball.getY());
+        }
+    }
+
+    @Test
+    public void ballLifecycle() {
+        // the pre-set ball is in play and the configured balls wait in order
+        BallStore balls = engine.balls;
+        assertEquals(1, balls.activeCount);
+        assertEquals(balls.count - 1, balls.queueCount);
+        int id = balls.active[0];
+        int next = balls.queued(0);
+
+        // a wrong hole sends the ball to the back of the queue
+        balls.x[id] = 11.5f;
+        balls.y[id] = 6.5f;
+        balls.holeCollisionCheck(engine, id, 12, 7);
+        assertEquals(0, balls.activeCount);
+        assertEquals(id, balls.queued(balls.queueCount - 1));
+        assertFalse(balls.spawned[id]);
+
+        // balls come back into play from the front of the queue
+        assertEquals(next, balls.activateNext());
+        balls.spawn(next, 2, 2);
+        assertEquals(1, balls.activeCount);
+
+        // a right hole sinks the ball for good
+        balls.x[next] = 15.5f;
+        balls.y[next] = 1.5f;
+        balls.holeCollisionCheck(engine, next, 16, 2);
+        assertEquals(0, balls.activeCount);
+        assertEquals(1, balls.sunkCount);
+        assertTrue(balls.sunk[next]);
+    }
+
+    @Test
+    public void gameEvents() {
+        // listeners get every event in order once the bus is closed
+        int[] types = new int[4];
+        int[] values = new int[4];
+        int[] count = new int[1];
+        engine.events.addListener((type, tick, ball, colour, x, y, value) -> {
+            types[count[0]] = type;
+            values[count[0]] = value;
+            count[0]++;
+        });
+        BallStore balls = engine.balls;
+        int id = balls.active[0];
+        balls.x[id] = 11.5f;
+        balls.y[id] = 6.5f;
+        balls.holeCollisionCheck(engine, id, 12, 7);
+        int next = balls.activateNext();
+        balls.spawn(next, 2, 2);
+        balls.x[next] = 15.5f;
+        balls.y[next] = 1.5f;
+        balls.holeCollisionCheck(engine, next, 16, 2);
+        engine.events.close();
+
+        assertEquals(2, count[0]);
+        assertEquals(GameEvents.WRONG_HOLE, types[0]);
+        assertTrue(values[0] <= 0);
+        assertEquals(GameEvents.CAPTURE, types[1]);
+        assertTrue(values[1] > 0);
+        assertEquals(0, engine.events.dropped);
+    }
+
+    @Test
+    public void ballCollisions() {
+        // two equal balls heading straight at each other swap velocities
+        BallStore balls = new BallStore(2);
+        int a = balls.add('0');
+        int b = balls.add('0');
+        balls.activateNext();
+        balls.activateNext();
+        balls.spawned[a] = balls.spawned[b] = true;
+        balls.x[a] = 5;
+        balls.y[a] = 5;
+        balls.x[b] = 5.5f;
+        balls.y[b] = 5;
+        balls.xVel[a] = 2;
+        balls.xVel[b] = -2;
+
+        BallCollider collider = new BallCollider();
+        collider.resolve(balls);
+        assertEquals(-2, balls.xVel[a], 0.001f);
+        assertEquals(2, balls.xVel[b], 0.001f);
+        assertEquals(0, balls.yVel[a], 0.001f);
+
+        // they are pushed apart so they no longer overlap
+        assertTrue((balls.x[b] - balls.x[a]) * App.CELLSIZE >= balls.radius[a] + balls.radius[b] - 0.001f);
+
+        // balls far apart are never tested
+        balls.x[b] = 15;
+        collider.resolve(balls);
+        assertEquals(0, collider.pairsTested);
+    }
+
+    @Test
+    public void dirtyTiles() {
+        // loading a level asks for the whole board to be drawn
+        int version = engine.boardVersion;
+        engine.reset();
+        assertEquals(version + 1, engine.boardVersion);
+        assertEquals(0, engine.dirtyTileCount);
+
+        // changed tiles are listed once each until drawn
+        engine.setTile(3, 4, '1');
+        engine.setTile(3, 4, '2');
+        engine.setTile(5, 6, 'X');
+        assertEquals('2', engine.board.get(3, 4));
+        assertEquals(2, engine.dirtyTileCount);
+        assertEquals(4 * engine.board.width + 3, engine.dirtyTiles[0]);
+        engine.clearDirtyTiles();
+        assertEquals(0, engine.dirtyTileCount);
+        engine.setTile(3, 4, '3');
+        assertEquals(1, engine.dirtyTileCount);
+    }
+
+    @Test
+    public void collisionGrid() {
+        // a blue wall and a wall following a ball tile
+        engine.setTile(2, 2, '2');
+        engine.setTile(4, 2, 'B');
+        engine.setTile(5, 2, '3');
+        int wall = engine.grid.get(2, 2);
+        assertTrue((wall & CollisionGrid.SOLID) != 0);
+        assertEquals('2', CollisionGrid.colour(wall));
+        assertEquals(0, engine.grid.get(5, 2) & CollisionGrid.SOLID);
+
+        // every cell of a hole knows where the hole is and its colour
+        engine.setTile(7, 7, 'H');
+        engine.setTile(8, 7, '4');
+        engine.setTile(7, 8, Tile.HOLE_FLAG);
+        engine.setTile(8, 8, Tile.HOLE_FLAG);
+        int lowerRight = engine.grid.get(8, 8);
+        assertTrue((lowerRight & CollisionGrid.HOLE) != 0);
+        assertTrue((lowerRight & CollisionGrid.HOLE_LEFT) != 0);
+        assertTrue((lowerRight & CollisionGrid.HOLE_UP) != 0);
+        assertEquals('4', CollisionGrid.colour(lowerRight));
+        assertEquals(0, engine.grid.get(8, 7) & CollisionGrid.SOLID);
+
+        // and the hole field points all four cells at the same hole centre
+        int hole = engine.holes.holeAt(7, 7);
+        assertNotEquals(-1, hole);
+        assertEquals(hole, engine.holes.holeAt(8, 8));
+        assertEquals(8, engine.holes.centreX[hole]);
+        assertEquals(8, engine.holes.centreY[hole]);
+        assertEquals('4', engine.holes.colour[hole]);
+        assertEquals(-1, engine.holes.holeAt(2, 2));
+
+        // accelerators read their direction from the tile to the right
+        engine.setTile(10, 10, 'A');
+        engine.setTile(11, 10, '3');
+        assertEquals(3, CollisionGrid.accel(engine.grid.get(10, 10)));
+
+        // outside the board is solid
+        assertEquals(CollisionGrid.SOLID, engine.grid.get(-1, 0));
+    }
+
+    @Test
+    public void parallelBalls() {
+        // hundreds of balls and lines play out the same on several threads as on one
+        GameEngine single = new GameEngine("config.json", 3L);
+        GameEngine parallel = new GameEngine("config.json", 3L);
+        parallel.parallelBalls = new ParallelBalls(4);
+        parallel.parallelBalls.minBalls = 1;
+        for (GameEngine e : new GameEngine[] {single, parallel}) {
+            for (int i = 0; i < 300; i++) {
+                e.balls.add((char) ('0' + i % App.COLOURS.length));
+                e.extraBallCount++;
+            }
+        }
+        Random random = new Random(3);
+        for (int i = 0; i < single.tickRate * 30; i++) {
+            if (i % 5 == 0) {
+                float x = random.nextFloat() * App.WIDTH;
+                float y = App.TOPBAR + random.nextFloat() * (App.HEIGHT - App.TOPBAR);
+                for (GameEngine e : new GameEngine[] {single, parallel}) {
+                    e.startLine(x, y);
+                    e.extendLine(x + 30, y + 20);
+                    e.extendLine(x + 60, y);
+                    e.endLine();
+                }
+            }
+            single.step();
+            parallel.step();
+            assertEquals(Replay.checksum(single), Replay.checksum(parallel));
+        }
+        assertEquals(single.rightHoleCount, parallel.rightHoleCount);
+        assertTrue(parallel.rightHoleCount + parallel.wrongHoleCount > 0);
+        assertTrue(parallel.parallelBalls.redone > 0); // Some balls went for the same line
+        parallel.close();
+        assertNull(parallel.parallelBalls);
+    }
+
+    @Test
+    public void snapshots(@TempDir Path dir) throws IOException {
+        // the saveable random numbers are the same as java.util.Random's
+        Random plain = new Random(5);
+        GameRandom saveable = new GameRandom(5);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(plain.nextInt(7), saveable.nextInt(7));
+        }
+
+        // a level in progress, with a line still being drawn
+        GameEngine played = new GameEngine("config.json", 9L);
+        for (int i = 0; i < played.tickRate * 10; i++) {
+            if (i % 30 == 0) {
+                played.startLine(100 + i % 300, 200);
+                played.extendLine(150 + i % 300, 260);
+                played.endLine();
+            }
+            played.step();
+        }
+        played.startLine(300, 300);
+        played.extendLine(320, 300);
+
+        Path file = dir.resolve("game.snapshot");
+        Snapshot snapshot = new Snapshot();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            snapshot.save(played, channel);
+        }
+        assertEquals(Files.size(file), snapshot.bytes);
+        assertTrue(snapshot.bytes < 4096);
+
+        // loaded into another engine, the game carries on exactly the same
+        GameEngine loaded = new GameEngine("config.json", 1L);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            snapshot.load(loaded, channel);
+        }
+        assertEquals(Replay.checksum(played), Replay.checksum(loaded));
+        for (GameEngine e : new GameEngine[] {played, loaded}) {
+            e.extendLine(340, 310);
+            e.endLine();
+        }
+        for (int i = 0; i < played.tickRate * 20; i++) {
+            played.step();
+            loaded.step();
+            assertEquals(Replay.checksum(played), Replay.checksum(loaded));
+        }
+        assertEquals(played.lineIndex.segmentCount, loaded.lineIndex.segmentCount);
+
+        // loading while recording is refused, so the recorded ticks never go back
+        loaded.recorder = new ReplayLog(dir.resolve("run.replay").toString(), loaded.seed, loaded.tickRate);
+        long tick = loaded.tick;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> snapshot.load(loaded, channel));
+        }
+        assertEquals(tick, loaded.tick);
+        loaded.recorder.close(loaded.tick);
+        loaded.recorder = null;
+
+        // a board bigger than the rest of the file is refused before it is built
+        byte[] saved = Files.readAllBytes(file);
+        ByteBuffer size = ByteBuffer.allocate(8).putInt(played.board.width).putInt(played.board.height);
+        int at = indexOf(saved, size.array());
+        ByteBuffer.wrap(saved, at, 8).putInt(2048).putInt(2048);
+        Files.write(file, Arrays.copyOf(saved, at + 8));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals("Malformed snapshot", assertThrows(IOException.class, () -> snapshot.load(loaded, channel)).getMessage());
+        }
+
+        // a snapshot of another level cut short leaves the game in progress as it was
+        long checksum = Replay.checksum(loaded);
+        int level = loaded.levelToload;
+        float elapsed = loaded.elapsedTime;
+        GameEngine other = new GameEngine("config.json", 2L);
+        other.levelToload = level % 3 + 1;
+        other.reset();
+        for (int i = 0; i < other.tickRate * 3; i++) {
+            other.step();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            snapshot.save(other, channel);
+        }
+        saved = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(saved, saved.length / 2));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> snapshot.load(loaded, channel));
+        }
+        assertEquals(checksum, Replay.checksum(loaded));
+        assertEquals(level, loaded.levelToload);
+        assertEquals(elapsed, loaded.elapsedTime);
+
+        // and so does one with a ball of a colour the game doesn't have
+        other.balls.colour[0] = (char) ('0' + other.scoreInc.length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            snapshot.save(other, channel);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals("Malformed snapshot", assertThrows(IOException.class, () -> snapshot.load(loaded, channel)).getMessage());
+        }
+        assertEquals(checksum, Replay.checksum(loaded));
+
+        // anything else is refused and leaves a playable level
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6});
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> snapshot.load(loaded, channel));
+        }
+        loaded.step();
+    }
+
+    // Position of the first occurrence of a run of bytes
+    private static int indexOf(byte[] data, byte[] part) {
+        for (int i = 0; i + part.length <= data.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + part.length), part)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void largeBoard(@TempDir Path dir) throws IOException {
+        // a 256x256 level walled in, with a ball, a spawner and a hole far apart
+        int size = 256;
+        StringBuilder layout = new StringBuilder();
+        for (int y = 0; y < size; y++) {
+            char[] row = new char[size];
+            Arrays.fill(row, (y == 0 || y == size - 1) ? 'X' : ' ');
+            row[0] = row[size - 1] = 'X';
+            if (y == 3) {
+                row[3] = 'S';
+            }
+            else if (y == 128) {
+                row[128] = 'B';
+                row[129] = '2';
+            }
+            else if (y == 250) {
+                row[250] = 'H';
+                row[251] = '1';
+            }
+            layout.append(row).append('\n');
+        }
+        Path file = dir.resolve("large.txt");
+        Files.write(file, layout.toString().getBytes());
+        JSONObject config = PApplet.loadJSONObject(new File("config.json"));
+        config.getJSONArray("levels").getJSONObject(0).setString("layout", file.toString());
+        GameEngine large = new GameEngine(config, null, 1L);
+
+        // the board takes its size from the layout, and only chunks with something on them are stored
+        assertEquals(size, large.board.width);
+        assertEquals(size, large.board.height);
+        assertEquals(size, large.grid.width);
+        assertTrue(large.board.chunkCount < (size / TileMap.CHUNK_SIZE) * (size / TileMap.CHUNK_SIZE) / 2);
+        assertEquals(Tile.HOLE_FLAG, large.board.get(251, 251));
+        assertNotEquals(-1, large.holes.holeAt(251, 251));
+        assertEquals(128, (int) large.balls.x[large.balls.active[0]]);
+        for (int i = 0; i < large.tickRate * 10; i++) {
+            large.step();
+        }
+        for (int i = 0; i < large.balls.activeCount; i++) {
+            float x = large.balls.x[large.balls.active[i]];
+            float y = large.balls.y[large.balls.active[i]];
+            assertTrue(x >= 0 && x <= size && y >= 0 && y <= size);
+        }
+
+        // the camera scrolls as far as the far corner and sees only what is near it
+        Camera camera = new Camera(App.WIDTH, App.HEIGHT - App.TOPBAR);
+        camera.setBoard(size, size);
+        camera.scroll(1e6f, 1e6f);
+        assertEquals(size * App.CELLSIZE - App.WIDTH, camera.x);
+        assertEquals(size - App.VIEW_WIDTH, camera.firstCol());
+        assertEquals(size - 1, camera.lastCol());
+        assertTrue(camera.sees(250 * App.CELLSIZE, 250 * App.CELLSIZE + App.TOPBAR, 252 * App.CELLSIZE, 252 * App.CELLSIZE + App.TOPBAR));
+        assertFalse(camera.sees(128 * App.CELLSIZE, 128 * App.CELLSIZE + App.TOPBAR, 129 * App.CELLSIZE, 129 * App.CELLSIZE + App.TOPBAR));
+
+        // a board that fits in the window never scrolls
+        camera.setBoard(App.VIEW_WIDTH, App.VIEW_HEIGHT);
+        camera.scroll(100, 100);
+        assertEquals(0, camera.x);
+        assertEquals(0, camera.y);
+    }
+
+    @Test
+    public void levelCache() {
+        // the binary form holds everything that was parsed
+        LevelData parsed = LevelData.parse(PApplet.loadJSONObject(new File("config.json")), 2);
+        LevelData decoded = LevelData.fromBytes(parsed.toBytes());
+        assertArrayEquals(parsed.layout, decoded.layout);
+        assertArrayEquals(parsed.balls, decoded.balls);
+        assertArrayEquals(parsed.scoreInc, decoded.scoreInc);
+        assertArrayEquals(parsed.scoreDec, decoded.scoreDec);
+        assertEquals(parsed.time, decoded.time);
+        assertEquals(parsed.spawnInterval, decoded.spawnInterval);
+
+        // a level parsed in the background is the same as one parsed on demand
+        engine.levels.preload(3);
+        assertEquals(180, engine.levels.get(3).time);
+        assertArrayEquals(LevelData.parse(PApplet.loadJSONObject(new File("config.json")), 3).layout, engine.levels.get(3).layout);
+
+        // resetting rebuilds the same board from the cache
+        char before = engine.board.get(5, 5);
+        engine.reset();
+        assertEquals(before, engine.board.get(5, 5));
+
+        // a board built ahead goes to one load only, and matches one built on demand
+        LevelBoard built = engine.levels.build(2);
+        engine.levelToload = 2;
+        engine.reset();
+        assertNotSame(built.board, engine.board);
+        assertArrayEquals(built.grid.cells, engine.grid.cells);
+        assertArrayEquals(built.spawnLoc, engine.spawnLoc);
+    }
+
+    @Test
+    public void seededReplay(@TempDir Path dir) throws IOException {
+        // the same seed plays out the same way
+        GameEngine a = new GameEngine("config.json", 5L);
+        GameEngine b = new GameEngine("config.json", 5L);
+        for (int i = 0; i < engine.tickRate * 20; i++) {
+            a.step();
+            b.step();
+        }
+        assertEquals(Replay.checksum(a), Replay.checksum(b));
+
+        // recorded input is played back on the same ticks
+        String path = dir.resolve("run.replay").toString();
+        GameEngine played = new GameEngine("config.json", 9L);
+        played.recorder = new ReplayLog(path, played.seed, played.tickRate);
+        for (int i = 0; i < 600; i++) {
+            if (i % 50 == 10) {
+                played.startLine(100 + i % 300, 200);
+                played.extendLine(150 + i % 300, 260);
+                played.extendLine(200 + i % 300, 240);
+                played.endLine();
+            }
+            if (i == 300) {
+                played.eraseLine(150 + 260 % 300, 260);
+            }
+            if (i == 400 || i == 420) {
+                played.togglePause();
+            }
+            played.step();
+        }
+        played.recorder.close(played.tick);
+
+        Replay replay = Replay.read(path);
+        assertEquals(9L, replay.seed);
+        assertEquals(600, replay.endTick);
+        GameEngine replayed = new GameEngine("config.json", replay.seed);
+        assertEquals(600, replay.play(replayed));
+        assertEquals(Replay.checksum(played), Replay.checksum(replayed));
+    }
+
+    @Test
+    public void textBuffer() {
+        // numbers are written as String.valueOf writes them, negative scores included
+        TextBuffer text = new TextBuffer(32);
+        for (int value : new int[] {0, 7, -7, 1234, -250, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            text.clear().append(value);
+            assertEquals(String.valueOf(value), new String(text.chars, 0, text.length));
+        }
+
+        // and to two decimal places, with the sign in front
+        float[] values = {0, 1.5f, -0.5f, -1.5f, 12.345f, -0.001f};
+        String[] expected = {"0.00", "1.50", "-0.50", "-1.50", "12.35", "0.00"};
+        for (int i = 0; i < values.length; i++) {
+            text.clear().appendHundredths(values[i]);
+            assertEquals(expected[i], new String(text.chars, 0, text.length));
+        }
+
+        // anything past the end is dropped
+        text = new TextBuffer(4);
+        text.append("Score: ").append(-1234);
+        assertEquals(4, text.length);
+    }
+}